@@ -27,4 +27,10 @@ public class MessageConstant {
     public static final String ORDER_NOT_FOUND = "订单不存在";
     public static final String ORDER_OVERTIME = "订单支付超时，已取消";
     public static final String ALREADY_EXISTS = "已存在";
+    public static final String SHOP_CLOSED = "店铺已打烊，暂不接单";
+    public static final String ORDER_BUSY = "下单人数过多，请稍后再试";
+    public static final String ORDER_SUBMIT_FAILED = "下单失败，请重新下单";
+    public static final String ORDER_SUBMIT_PROCESSING = "订单正在提交，请勿重复下单";
+    public static final String ORDER_PRODUCT_UNAVAILABLE = "购物车中有商品已停售，请重新选择";
+    public static final String ORDER_AMOUNT_ERROR = "订单金额有误，请刷新后重新下单";
 }
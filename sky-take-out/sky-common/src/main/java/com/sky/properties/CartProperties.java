@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * 购物车的存储方式：db 数据库表，redis 每个用户一个hash
+     */
+    private String store = "db";
+
+    /**
+     * redis存储时购物车的保留时间（天），最后一次修改后超过该时间自动清除
+     */
+    private int ttlDays = 7;
+
+}
@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.menu")
+@Data
+public class MenuProperties {
+
+    /**
+     * 进程内菜品缓存的过期时间（毫秒）
+     */
+    private long localTtlMillis = 60000;
+
+    /**
+     * 进程内菜品缓存最多缓存的分类数量
+     */
+    private int localMaxSize = 1000;
+
+    /**
+     * redis中菜品缓存的过期时间（分钟）
+     */
+    private long redisTtlMinutes = 60;
+
+    /**
+     * 进程内缓存分类版本号的时间（毫秒），节点漏收版本变更通知时最多在该时间后感知到
+     */
+    private long versionTtlMillis = 5000;
+
+}
@@ -0,0 +1,94 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order")
+@Data
+public class OrderProperties {
+
+    /**
+     * 订单状态计数的存储方式：local 进程内，redis 多节点共享
+     */
+    private String counterStore = "local";
+
+    /**
+     * 订单支付超时时间（分钟），超时未支付自动取消
+     */
+    private int payTimeoutMinutes = 15;
+
+    /**
+     * 超时订单调度器：local 进程内时间轮，redis 多节点共享的有序集合
+     */
+    private String timeoutScheduler = "local";
+
+    /**
+     * 定时任务批量修改订单状态时每批处理的订单数量
+     */
+    private int batchSize = 500;
+
+    /**
+     * 订单号生成器的节点id，0~1023，多节点部署时每个节点必须不同
+     */
+    private long workerId = 0;
+
+    /**
+     * 下单方式：sync 请求内直接写库，async 放入队列由后台线程批量写库
+     */
+    private String submitMode = "sync";
+
+    /**
+     * 异步下单时队列的容量，队列满时拒绝下单
+     */
+    private int submitQueueCapacity = 2000;
+
+    /**
+     * 异步下单时写库的线程数
+     */
+    private int submitWorkers = 2;
+
+    /**
+     * 异步下单时每批写入的订单数量
+     */
+    private int submitBatchSize = 50;
+
+    /**
+     * 异步下单受理后等待写库的最长时间（秒），超过后写库线程不再写入该订单，客户端查询结果时返回下单失败
+     */
+    private long submitAcceptTimeoutSeconds = 120;
+
+    /**
+     * 下单令牌的保留时间（分钟），在此时间内携带相同令牌重复下单时直接返回首次下单的结果
+     */
+    private long submitTokenTtlMinutes = 60;
+
+    /**
+     * 下单处理中标记的保留时间（秒），下单过程中会定时续期，节点在下单过程中宕机时到期后可用同一令牌重试
+     */
+    private long submitTokenProcessingSeconds = 30;
+
+    /**
+     * 每份商品的打包费（分），订单表的打包费以整数元保存，必须是100的整数倍
+     */
+    private long packFeeCents = 100;
+
+    /**
+     * 每单的配送费（分）
+     */
+    private long deliveryFeeCents = 600;
+
+    /**
+     * 每份餐具的费用（分）
+     */
+    private long tablewareFeeCents = 0;
+
+
+    public void setPackFeeCents(long packFeeCents) {
+        if (packFeeCents < 0 || packFeeCents % 100 != 0) {
+            throw new IllegalArgumentException("打包费必须是整数元（100的整数倍）：" + packFeeCents);
+        }
+        this.packFeeCents = packFeeCents;
+    }
+}
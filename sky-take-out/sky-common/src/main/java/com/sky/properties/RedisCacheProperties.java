@@ -0,0 +1,46 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cache")
+@Data
+public class RedisCacheProperties {
+
+    /**
+     * 缓存值的编码方式：json，gzip-json 超过阈值时压缩
+     */
+    private String codec = "json";
+
+    /**
+     * gzip-json编码时，超过该字节数才压缩
+     */
+    private int compressThreshold = 1024;
+
+    /**
+     * Spring Cache默认的过期时间
+     */
+    private Duration defaultTtl = Duration.ofMinutes(30);
+
+    /**
+     * 各缓存的过期时间，key为缓存名称
+     */
+    private Map<String, Duration> ttl = new HashMap<>();
+
+    /**
+     * 过期时间随机增加的最大百分比，避免同一批写入的缓存同时过期
+     */
+    private int ttlJitterPercent = 10;
+
+    /**
+     * 是否缓存空值，查询结果为空时也缓存，避免反复查询数据库
+     */
+    private boolean cacheNullValues = true;
+
+}
@@ -0,0 +1,67 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单号生成器，雪花算法：41位毫秒时间戳 + 10位节点id + 12位序号
+ * 生成的订单号按时间递增，不同节点不会重复。
+ * 通过CAS更新状态，不加锁；同一毫秒内序号用完时借用下一毫秒，时钟回拨时继续在上次的时间上递增，保证单调
+ */
+public class OrderNumberGenerator {
+
+    //起始时间 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long workerId;
+
+    //高位为毫秒时间戳，低12位为该毫秒内的序号
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * @param workerId 节点id，0~1023，每个节点必须不同
+     */
+    public OrderNumberGenerator(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("节点id必须在0~" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    /**
+     * 生成下一个id
+     * @return
+     */
+    public long nextId() {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            long now = System.currentTimeMillis();
+            if (now > (current >>> SEQUENCE_BITS)) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                //同一毫秒或时钟回拨，序号加一，序号溢出时进位到下一毫秒
+                next = current + 1;
+            }
+        } while (!state.compareAndSet(current, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return ((timestamp - EPOCH) << (WORKER_ID_BITS + SEQUENCE_BITS))
+                | (workerId << SEQUENCE_BITS)
+                | sequence;
+    }
+
+    /**
+     * 生成下一个订单号
+     * @return
+     */
+    public String nextNumber() {
+        return String.valueOf(nextId());
+    }
+}
@@ -0,0 +1,30 @@
+package com.sky.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DateStatisticsDTO implements Serializable {
+    //日期
+    private LocalDate date;
+
+    //订单总数
+    private Integer orderCount;
+
+    //有效订单数
+    private Integer validOrderCount;
+
+    //营业额
+    private Double turnover;
+
+    //新增用户数
+    private Integer newUsers;
+}
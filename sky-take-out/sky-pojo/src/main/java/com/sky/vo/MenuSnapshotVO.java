@@ -0,0 +1,34 @@
+package com.sky.vo;
+
+import com.sky.entity.Category;
+import com.sky.entity.Setmeal;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuSnapshotVO implements Serializable {
+
+    //菜单版本号
+    private Long version;
+
+    //起用的分类
+    private List<Category> categories;
+
+    //分类id -> 起售中的菜品及口味
+    private Map<Long, List<DishVO>> dishes;
+
+    //分类id -> 起售中的套餐
+    private Map<Long, List<Setmeal>> setmeals;
+
+    //套餐id -> 套餐包含的菜品
+    private Map<Long, List<DishItemVO>> setmealDishes;
+}
@@ -0,0 +1,14 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，用于标识会修改菜单（分类、菜品、套餐）的方法，执行成功后菜单快照需要重建
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MenuChange {
+}
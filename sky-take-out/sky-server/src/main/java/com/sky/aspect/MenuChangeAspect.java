@@ -0,0 +1,40 @@
+package com.sky.aspect;
+
+import com.sky.event.MenuChangeEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自定义切面类，菜单修改后发布菜单变更事件
+ */
+@Aspect
+@Slf4j
+@Component
+public class MenuChangeAspect {
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * 切入点
+     */
+    @Pointcut("execution(* com.sky.service.impl.*.*(..)) && @annotation(com.sky.annotation.MenuChange)")
+    public void menuChangePointCut() {
+    }
+
+    /**
+     * 返回通知，方法执行成功后发布事件，监听者在事务提交后处理
+     */
+    @AfterReturning("menuChangePointCut()")
+    public void publishMenuChange(JoinPoint joinPoint) {
+        String source = joinPoint.getSignature().toShortString();
+        log.info("菜单已修改：{}", source);
+        applicationEventPublisher.publishEvent(new MenuChangeEvent(source));
+    }
+}
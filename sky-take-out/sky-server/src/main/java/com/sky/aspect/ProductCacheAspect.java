@@ -0,0 +1,89 @@
+package com.sky.aspect;
+
+import com.sky.cache.ProductCache;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 自定义切面类，菜品、套餐修改或删除后使商品缓存失效
+ */
+@Aspect
+@Slf4j
+@Component
+public class ProductCacheAspect {
+
+    //ProductCache依赖的mapper也会被本切面代理，延迟注入以免mapper在切面创建前提前初始化
+    @Lazy
+    @Autowired
+    private ProductCache productCache;
+
+    /**
+     * 切入点：菜品的修改和删除
+     */
+    @Pointcut("execution(* com.sky.mapper.DishMapper.update*(..)) || execution(* com.sky.mapper.DishMapper.delete*(..))")
+    public void dishChangePointCut() {
+    }
+
+    /**
+     * 切入点：套餐的修改和删除
+     */
+    @Pointcut("execution(* com.sky.mapper.SetmealMapper.update*(..)) || execution(* com.sky.mapper.SetmealMapper.delete*(..))")
+    public void setmealChangePointCut() {
+    }
+
+    @AfterReturning("dishChangePointCut()")
+    public void invalidateDishes(JoinPoint joinPoint) {
+        productCache.invalidateDishes(getIds(joinPoint));
+    }
+
+    @AfterReturning("setmealChangePointCut()")
+    public void invalidateSetmeals(JoinPoint joinPoint) {
+        productCache.invalidateSetmeals(getIds(joinPoint));
+    }
+
+    /**
+     * 从参数中取出被修改的id：实体对象、单个id或id集合
+     */
+    private List<Long> getIds(JoinPoint joinPoint) {
+        Object[] args = joinPoint.getArgs();
+        if (args == null || args.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Object arg : args) {
+            if (arg instanceof Dish) {
+                addIfPresent(ids, ((Dish) arg).getId());
+            } else if (arg instanceof Setmeal) {
+                addIfPresent(ids, ((Setmeal) arg).getId());
+            } else if (arg instanceof Long) {
+                ids.add((Long) arg);
+            } else if (arg instanceof List) {
+                for (Object id : (List<?>) arg) {
+                    if (id instanceof Long) {
+                        ids.add((Long) id);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void addIfPresent(List<Long> ids, Long id) {
+        //批量修改时实体对象只携带修改内容，没有id
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.sky.json.JacksonObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * redis缓存值序列化器
+ * 使用JacksonObjectMapper的配置序列化为JSON，带有类型信息以便还原DTO；超过阈值时可选GZIP压缩。
+ * 解码时按数据开头判断是否为GZIP，切换压缩配置前后写入的数据都能读取；
+ * 之前用JDK序列化写入的数据（如店铺营业状态这类持久数据）仍按JDK序列化读取，下次写入时转为JSON
+ */
+@Slf4j
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    //GZIP数据的开头
+    private static final byte GZIP_MAGIC_0 = (byte) 0x1f;
+    private static final byte GZIP_MAGIC_1 = (byte) 0x8b;
+    //JDK序列化数据的开头
+    private static final byte JDK_MAGIC_0 = (byte) 0xac;
+    private static final byte JDK_MAGIC_1 = (byte) 0xed;
+
+    private final GenericJackson2JsonRedisSerializer json;
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+    private final boolean compress;
+    private final int compressThreshold;
+
+    /**
+     * @param compress 是否压缩
+     * @param compressThreshold 超过该字节数才压缩
+     */
+    public CompactRedisSerializer(boolean compress, int compressThreshold) {
+        ObjectMapper objectMapper = new JacksonObjectMapper();
+        //只允许还原项目自身的类型，以及缓存数据中实际用到的集合和数值类型
+        BasicPolymorphicTypeValidator validator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.sky.")
+                .allowIfSubType(ArrayList.class)
+                .allowIfSubType(LinkedList.class)
+                .allowIfSubType(HashMap.class)
+                .allowIfSubType(LinkedHashMap.class)
+                .allowIfSubType(HashSet.class)
+                .allowIfSubType(LinkedHashSet.class)
+                .allowIfSubType(BigDecimal.class)
+                .allowIfSubType(NullValue.class)
+                .build();
+        objectMapper.activateDefaultTyping(validator, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        //Spring Cache缓存空值时使用NullValue
+        GenericJackson2JsonRedisSerializer.registerNullValueSerializer(objectMapper, "@class");
+        this.json = new GenericJackson2JsonRedisSerializer(objectMapper);
+        this.compress = compress;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = json.serialize(value);
+        if (!compress || bytes.length <= compressThreshold) {
+            return bytes;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new SerializationException("压缩缓存数据失败", e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length >= 2 && bytes[0] == JDK_MAGIC_0 && bytes[1] == JDK_MAGIC_1) {
+            try {
+                return jdk.deserialize(bytes);
+            } catch (SerializationException e) {
+                //类已不存在等原因无法还原的旧数据，视为缓存未命中
+                log.warn("无法读取JDK序列化格式的数据：{}", e.getMessage());
+                return null;
+            }
+        }
+        if (bytes.length >= 2 && bytes[0] == GZIP_MAGIC_0 && bytes[1] == GZIP_MAGIC_1) {
+            bytes = decompress(bytes);
+        }
+        return json.deserialize(bytes);
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = gzip.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("解压缓存数据失败", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,146 @@
+package com.sky.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存装饰器：统计命中、未命中和加载耗时；
+ * sync=true 的查询未命中时，同一个key只有一个线程加载，其他线程等待加载结果，不同key之间互不阻塞
+ */
+public class InstrumentedCache implements Cache {
+
+    private final Cache delegate;
+    //正在加载中的key
+    private final Map<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public InstrumentedCache(Cache delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return record(delegate.get(key));
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        return wrapper == null ? null : type.cast(wrapper.get());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            //其他线程正在加载，等待其结果
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            //获得加载权之前可能已经有线程加载完成
+            wrapper = delegate.get(key);
+            if (wrapper != null) {
+                future.complete(wrapper.get());
+                return (T) wrapper.get();
+            }
+            long start = System.nanoTime();
+            T value = valueLoader.call();
+            loadNanos.add(System.nanoTime() - start);
+            loadCount.increment();
+            delegate.put(key, value);
+            future.complete(value);
+            return value;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+
+    /**
+     * 缓存统计：命中数、未命中数、加载次数、平均加载耗时
+     * @return
+     */
+    public Map<String, Object> getStatistics() {
+        long loads = loadCount.sum();
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("hits", hitCount.sum());
+        statistics.put("misses", missCount.sum());
+        statistics.put("loads", loads);
+        statistics.put("avgLoadMillis", loads == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / loads);
+        return statistics;
+    }
+
+    private ValueWrapper record(ValueWrapper wrapper) {
+        if (wrapper == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return wrapper;
+    }
+}
@@ -0,0 +1,75 @@
+package com.sky.cache;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 写入缓存时给过期时间增加随机值，避免同一时间写入的缓存在同一时间过期，集中回源数据库
+ */
+public class JitterRedisCacheWriter implements RedisCacheWriter {
+
+    private final RedisCacheWriter delegate;
+    private final int jitterPercent;
+
+    /**
+     * @param delegate
+     * @param jitterPercent 过期时间随机增加的最大百分比
+     */
+    public JitterRedisCacheWriter(RedisCacheWriter delegate, int jitterPercent) {
+        this.delegate = delegate;
+        this.jitterPercent = jitterPercent;
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        delegate.put(name, key, value, jitter(ttl));
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        return delegate.putIfAbsent(name, key, value, jitter(ttl));
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new JitterRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector), jitterPercent);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    private Duration jitter(Duration ttl) {
+        if (ttl == null || ttl.isZero() || ttl.isNegative() || jitterPercent <= 0) {
+            return ttl;
+        }
+        long millis = ttl.toMillis();
+        long extra = ThreadLocalRandom.current().nextLong(millis * jitterPercent / 100 + 1);
+        return Duration.ofMillis(millis + extra);
+    }
+}
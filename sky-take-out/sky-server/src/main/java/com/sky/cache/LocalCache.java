@@ -0,0 +1,192 @@
+package com.sky.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 进程内缓存，支持过期时间、容量上限，同一个key并发未命中时只加载一次
+ * @param <K>
+ * @param <V>
+ */
+public class LocalCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    //正在加载中的key，同一个key的并发请求等待同一次加载结果
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    //每次失效时递增，用于丢弃失效前开始、失效后才完成的加载结果
+    private final AtomicLong generation = new AtomicLong();
+
+    private final long ttlMillis;
+    private final int maxSize;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public LocalCache(long ttlMillis, int maxSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 查询缓存，未命中或已过期时通过loader加载并放入缓存
+     * @param key
+     * @param loader
+     * @return
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired()) {
+            hitCount.increment();
+            return entry.value;
+        }
+        missCount.increment();
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            //其他线程正在加载，等待其结果
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            entry = entries.get(key);
+            if (entry != null && !entry.isExpired()) {
+                future.complete(entry.value);
+                return entry.value;
+            }
+            long currentGeneration = generation.get();
+            long start = System.nanoTime();
+            V value = loader.apply(key);
+            loadNanos.add(System.nanoTime() - start);
+            loadCount.increment();
+            if (currentGeneration == generation.get()) {
+                put(key, value);
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 只查询缓存，不加载
+     * @param key
+     * @return 未命中时返回null
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired()) {
+            hitCount.increment();
+            return entry.value;
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 放入缓存
+     * @param key
+     * @param value
+     */
+    public void put(K key, V value) {
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 使指定key失效
+     * @param key
+     */
+    public void invalidate(K key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+    }
+
+    /**
+     * 使全部缓存失效
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    /**
+     * 平均加载耗时，单位毫秒
+     */
+    public double getAverageLoadMillis() {
+        long count = loadCount.sum();
+        return count == 0 ? 0.0 : loadNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * 命中率
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * 容量已满时先清理过期数据，仍然满时淘汰任意一条
+     */
+    private void evict() {
+        entries.values().removeIf(Entry::isExpired);
+        Iterator<K> iterator = entries.keySet().iterator();
+        while (entries.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+    }
+}
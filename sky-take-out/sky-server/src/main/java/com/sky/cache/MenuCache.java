@@ -0,0 +1,142 @@
+package com.sky.cache;
+
+import com.sky.properties.MenuProperties;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 菜品缓存，进程内缓存 + redis 两级
+ * 每个分类有一个版本号，缓存的key中带有版本号。菜品修改时只需递增版本号并广播，
+ * 旧版本的缓存不会再被访问。每个分类写入redis的key记录在该分类的集合中，失效时用UNLINK异步删除
+ */
+@Component
+@Slf4j
+public class MenuCache implements MessageListener {
+
+    //分类id -> 版本号
+    private static final String VERSION_KEY = "DISH_VERSION";
+    //版本变更通知频道，消息内容为 field:版本号
+    private static final String CHANNEL = "DISH_VERSION_CHANGE";
+    //分类下已写入redis的缓存key集合
+    private static final String KEYS_PREFIX = "DISH_KEYS:";
+
+    @Autowired
+    private MenuProperties menuProperties;
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private LocalCache<String, List<DishVO>> dishCache;
+    private LocalCache<String, Long> versionCache;
+
+    @PostConstruct
+    public void init() {
+        dishCache = new LocalCache<>(menuProperties.getLocalTtlMillis(), menuProperties.getLocalMaxSize());
+        versionCache = new LocalCache<>(menuProperties.getVersionTtlMillis(), menuProperties.getLocalMaxSize());
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 查询分类下的菜品，依次查询进程内缓存、redis，都未命中时通过loader查询数据库
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    public List<DishVO> getDishes(Long categoryId, Supplier<List<DishVO>> loader) {
+        //构造缓存的key，规则：dish_分类id_v分类版本号
+        String key = "dish_" + categoryId + "_v" + getVersion(String.valueOf(categoryId));
+        return dishCache.get(key, k -> {
+            List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(k);
+            if (list == null) {
+                list = loader.get();
+                redisTemplate.opsForValue().set(k, list, menuProperties.getRedisTtlMinutes(), TimeUnit.MINUTES);
+                String keysKey = KEYS_PREFIX + categoryId;
+                stringRedisTemplate.opsForSet().add(keysKey, k);
+                stringRedisTemplate.expire(keysKey, menuProperties.getRedisTtlMinutes(), TimeUnit.MINUTES);
+            }
+            return list;
+        });
+    }
+
+    /**
+     * 使指定分类的菜品缓存失效
+     * @param categoryId
+     */
+    public void invalidate(Long categoryId) {
+        invalidate(Collections.singletonList(categoryId));
+    }
+
+    /**
+     * 使多个分类的菜品缓存失效
+     * @param categoryIds
+     */
+    public void invalidate(Collection<Long> categoryIds) {
+        for (Long categoryId : categoryIds) {
+            if (categoryId == null) {
+                continue;
+            }
+            bumpVersion(String.valueOf(categoryId));
+            unlinkKeys(KEYS_PREFIX + categoryId);
+        }
+    }
+
+    /**
+     * 删除集合中记录的缓存key以及集合本身
+     * @param keysKey
+     */
+    private void unlinkKeys(String keysKey) {
+        Set<String> keys = stringRedisTemplate.opsForSet().members(keysKey);
+        if (keys != null && !keys.isEmpty()) {
+            stringRedisTemplate.unlink(keys);
+        }
+        stringRedisTemplate.unlink(keysKey);
+    }
+
+    private void bumpVersion(String field) {
+        Long version = stringRedisTemplate.opsForHash().increment(VERSION_KEY, field, 1);
+        versionCache.put(field, version);
+        stringRedisTemplate.convertAndSend(CHANNEL, field + ":" + version);
+    }
+
+    private long getVersion(String field) {
+        return versionCache.get(field, f -> {
+            Object version = stringRedisTemplate.opsForHash().get(VERSION_KEY, f);
+            return version == null ? 0L : Long.parseLong(version.toString());
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.lastIndexOf(':');
+        if (index <= 0) {
+            return;
+        }
+        String field = body.substring(0, index);
+        long version = Long.parseLong(body.substring(index + 1));
+        Long current = versionCache.getIfPresent(field);
+        if (current == null || current < version) {
+            versionCache.put(field, version);
+        }
+    }
+}
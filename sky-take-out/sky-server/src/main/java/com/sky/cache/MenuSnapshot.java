@@ -0,0 +1,37 @@
+package com.sky.cache;
+
+/**
+ * 预先序列化好的菜单快照
+ */
+public class MenuSnapshot {
+
+    private final long version;
+    private final String etag;
+    //JSON数据
+    private final byte[] json;
+    //GZIP压缩后的JSON数据
+    private final byte[] gzip;
+
+    public MenuSnapshot(long version, String etag, byte[] json, byte[] gzip) {
+        this.version = version;
+        this.etag = etag;
+        this.json = json;
+        this.gzip = gzip;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public byte[] getGzip() {
+        return gzip;
+    }
+}
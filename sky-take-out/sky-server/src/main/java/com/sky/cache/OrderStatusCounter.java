@@ -0,0 +1,114 @@
+package com.sky.cache;
+
+import com.sky.dto.StatusCountDTO;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangeEvent;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 订单状态计数器，订单状态变更时增量更新，并定期与数据库对账
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    public static final String KEY = "ORDER_STATUS_COUNT";
+
+    private static final String REDIS_STORE = "redis";
+
+    //需要计数的订单状态：待接单、待派送、派送中
+    private static final List<Integer> COUNTED_STATUSES =
+            Arrays.asList(Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS);
+
+    private final Map<Integer, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    @PostConstruct
+    public void init() {
+        COUNTED_STATUSES.forEach(status -> counters.put(status, new AtomicInteger()));
+        reconcile();
+    }
+
+    /**
+     * 获取指定状态的订单数量
+     * @param status
+     * @return
+     */
+    public Integer get(Integer status) {
+        if (isRedisStore()) {
+            Object value = stringRedisTemplate.opsForHash().get(KEY, status.toString());
+            return value == null ? 0 : Math.max(Integer.parseInt(value.toString()), 0);
+        }
+        AtomicInteger counter = counters.get(status);
+        return counter == null ? 0 : Math.max(counter.get(), 0);
+    }
+
+    /**
+     * 订单状态变更后，原状态计数减少，新状态计数增加
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChange(OrderStatusChangeEvent event) {
+        if (event.getCount() <= 0) {
+            return;
+        }
+        add(event.getFromStatus(), -event.getCount());
+        add(event.getToStatus(), event.getCount());
+    }
+
+    /**
+     * 定期与数据库对账，修正计数的偏差
+     */
+    @Scheduled(fixedDelayString = "${sky.order.counter-reconcile-millis:60000}")
+    public void reconcile() {
+        List<StatusCountDTO> list = orderMapper.countGroupByStatus(COUNTED_STATUSES);
+        Map<Integer, Integer> countMap = new HashMap<>();
+        COUNTED_STATUSES.forEach(status -> countMap.put(status, 0));
+        list.forEach(statusCount -> countMap.put(statusCount.getStatus(), statusCount.getCount()));
+
+        if (isRedisStore()) {
+            Map<String, String> hash = new HashMap<>();
+            countMap.forEach((status, count) -> hash.put(status.toString(), count.toString()));
+            stringRedisTemplate.opsForHash().putAll(KEY, hash);
+        } else {
+            countMap.forEach((status, count) -> counters.get(status).set(count));
+        }
+        log.debug("订单状态计数对账完成：{}", countMap);
+    }
+
+    private void add(Integer status, int delta) {
+        if (status == null || !COUNTED_STATUSES.contains(status)) {
+            return;
+        }
+        if (isRedisStore()) {
+            stringRedisTemplate.opsForHash().increment(KEY, status.toString(), delta);
+        } else {
+            counters.get(status).addAndGet(delta);
+        }
+    }
+
+    private boolean isRedisStore() {
+        return REDIS_STORE.equals(orderProperties.getCounterStore());
+    }
+}
@@ -0,0 +1,183 @@
+package com.sky.cache;
+
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 菜品、套餐的进程内缓存，按id查询
+ * 菜品、套餐修改或删除后立即失效，事务提交后再失效一次并通知其他节点
+ */
+@Component
+@Slf4j
+public class ProductCache implements MessageListener {
+
+    //失效通知频道，消息内容为 dish:1,2,3 或 setmeal:1,2,3
+    private static final String CHANNEL = "PRODUCT_CHANGE";
+    private static final String DISH = "dish";
+    private static final String SETMEAL = "setmeal";
+
+    private static final long TTL_MILLIS = 5 * 60 * 1000;
+    private static final int MAX_SIZE = 10000;
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final LocalCache<Long, Dish> dishCache = new LocalCache<>(TTL_MILLIS, MAX_SIZE);
+    private final LocalCache<Long, Setmeal> setmealCache = new LocalCache<>(TTL_MILLIS, MAX_SIZE);
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * 根据id查询菜品
+     * @param id
+     * @return 不存在时返回null
+     */
+    public Dish getDish(Long id) {
+        return dishCache.get(id, dishMapper::getById);
+    }
+
+    /**
+     * 根据id批量查询菜品，未命中的id一次查询数据库
+     * @param ids
+     * @return id -> 菜品，不存在的id不包含在结果中
+     */
+    public Map<Long, Dish> getDishes(Collection<Long> ids) {
+        return getAll(ids, dishCache, dishMapper::getByIds, Dish::getId);
+    }
+
+    /**
+     * 根据id查询套餐
+     * @param id
+     * @return 不存在时返回null
+     */
+    public Setmeal getSetmeal(Long id) {
+        return setmealCache.get(id, setmealMapper::getById);
+    }
+
+    /**
+     * 根据id批量查询套餐，未命中的id一次查询数据库
+     * @param ids
+     * @return id -> 套餐，不存在的id不包含在结果中
+     */
+    public Map<Long, Setmeal> getSetmeals(Collection<Long> ids) {
+        return getAll(ids, setmealCache, setmealMapper::getByIds, Setmeal::getId);
+    }
+
+    /**
+     * 使菜品缓存失效
+     * @param ids
+     */
+    public void invalidateDishes(Collection<Long> ids) {
+        invalidate(DISH, ids);
+    }
+
+    /**
+     * 使套餐缓存失效
+     * @param ids
+     */
+    public void invalidateSetmeals(Collection<Long> ids) {
+        invalidate(SETMEAL, ids);
+    }
+
+    /**
+     * 缓存统计：各缓存的数量和命中率
+     * @return
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("dishSize", dishCache.size());
+        statistics.put("dishHitRate", dishCache.getHitRate());
+        statistics.put("setmealSize", setmealCache.size());
+        statistics.put("setmealHitRate", setmealCache.getHitRate());
+        return statistics;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(':');
+        if (index <= 0) {
+            return;
+        }
+        LocalCache<Long, ?> cache = DISH.equals(body.substring(0, index)) ? dishCache : setmealCache;
+        for (String id : body.substring(index + 1).split(",")) {
+            if (!id.isEmpty()) {
+                cache.invalidate(Long.valueOf(id));
+            }
+        }
+    }
+
+    private <T> Map<Long, T> getAll(Collection<Long> ids, LocalCache<Long, T> cache,
+                                    Function<List<Long>, List<T>> loader, Function<T, Long> idGetter) {
+        Map<Long, T> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            T value = cache.getIfPresent(id);
+            if (value != null) {
+                result.put(id, value);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (T value : loader.apply(missing)) {
+                cache.put(idGetter.apply(value), value);
+                result.put(idGetter.apply(value), value);
+            }
+        }
+        return result;
+    }
+
+    private void invalidate(String type, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        LocalCache<Long, ?> cache = DISH.equals(type) ? dishCache : setmealCache;
+        ids.forEach(cache::invalidate);
+
+        String message = type + ":" + ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            //事务提交前其他请求可能又把旧数据加载进缓存，提交后再失效一次
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    ids.forEach(cache::invalidate);
+                    stringRedisTemplate.convertAndSend(CHANNEL, message);
+                }
+            });
+        } else {
+            stringRedisTemplate.convertAndSend(CHANNEL, message);
+        }
+    }
+}
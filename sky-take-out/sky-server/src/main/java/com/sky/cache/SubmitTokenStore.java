@@ -0,0 +1,136 @@
+package com.sky.cache;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.OrderProperties;
+import com.sky.vo.OrderSubmitVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 下单令牌，客户端每次下单生成一个令牌放在请求头中，网络重试时携带相同令牌
+ * 首次请求用SETNX占住令牌后下单并保存结果，重复请求直接返回保存的结果，不再访问数据库。
+ * 下单过程中定时续期处理中标记，下单再慢也不会在完成前过期；节点宕机后不再续期，标记到期后可用同一令牌重试
+ */
+@Component
+@Slf4j
+public class SubmitTokenStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final String KEY_PREFIX = "ORDER_SUBMIT_TOKEN:";
+
+    //首次请求尚未完成时令牌的值
+    private static final String PROCESSING = "PROCESSING";
+
+    //仅在令牌仍为处理中时续期，避免缩短已保存结果的保留时间
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "return redis.call('EXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0", Long.class);
+
+    //续期处理中标记
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "submit-token-renew");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    @PreDestroy
+    public void destroy() {
+        renewer.shutdownNow();
+    }
+
+    /**
+     * 按令牌幂等地执行下单
+     * @param userId
+     * @param token 为空时不做去重
+     * @param submitter 实际的下单逻辑
+     * @return
+     */
+    public OrderSubmitVO submit(Long userId, String token, Supplier<OrderSubmitVO> submitter) {
+        if (token == null || token.isEmpty()) {
+            return submitter.get();
+        }
+        String key = KEY_PREFIX + userId + ":" + token;
+
+        Boolean acquired;
+        try {
+            //处理中标记只保留较短的时间并在下单过程中续期，节点在下单过程中宕机时不会长时间挡住重试
+            acquired = stringRedisTemplate.opsForValue().setIfAbsent(key, PROCESSING,
+                    orderProperties.getSubmitTokenProcessingSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            //redis不可用时不能阻止下单，退化为不去重
+            log.warn("下单令牌校验失败，跳过去重：{}", e.getMessage());
+            return submitter.get();
+        }
+
+        if (!Boolean.TRUE.equals(acquired)) {
+            String value = stringRedisTemplate.opsForValue().get(key);
+            if (value == null || PROCESSING.equals(value)) {
+                throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_PROCESSING);
+            }
+            log.info("重复下单请求，返回首次下单结果，令牌：{}", token);
+            return JSON.parseObject(value, OrderSubmitVO.class);
+        }
+
+        OrderSubmitVO orderSubmitVO;
+        ScheduledFuture<?> renewal = scheduleRenewal(key);
+        try {
+            orderSubmitVO = submitter.get();
+        } catch (RuntimeException e) {
+            //下单失败时释放令牌，允许用相同令牌重试
+            renewal.cancel(false);
+            release(key);
+            throw e;
+        }
+        renewal.cancel(false);
+        try {
+            stringRedisTemplate.opsForValue().set(key, JSON.toJSONString(orderSubmitVO),
+                    orderProperties.getSubmitTokenTtlMinutes(), TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("保存下单结果失败，令牌：{}，{}", token, e.getMessage());
+        }
+        return orderSubmitVO;
+    }
+
+    /**
+     * 每隔三分之一的标记保留时间续期一次，一次续期失败不会导致标记过期
+     */
+    private ScheduledFuture<?> scheduleRenewal(String key) {
+        long seconds = orderProperties.getSubmitTokenProcessingSeconds();
+        long period = Math.max(TimeUnit.SECONDS.toMillis(seconds) / 3, 1);
+        return renewer.scheduleAtFixedRate(() -> {
+            try {
+                stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key), PROCESSING, String.valueOf(seconds));
+            } catch (Exception e) {
+                log.warn("续期下单令牌失败：{}", e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void release(String key) {
+        try {
+            stringRedisTemplate.delete(key);
+        } catch (Exception e) {
+            log.warn("释放下单令牌失败：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.sky.cart;
+
+import com.sky.cache.ProductCache;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 基于shopping_cart表的购物车存储
+ */
+@Component
+@ConditionalOnProperty(name = "sky.cart.store", havingValue = "db", matchIfMissing = true)
+public class DbShoppingCartStore implements ShoppingCartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private ProductCache productCache;
+
+    @Override
+    public void add(ShoppingCart shoppingCart) {
+        //判断当前加入到购物车中的商品是否已经存在了
+        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+
+        //如果已经存在了，只需要将数量+1
+        if (list != null && !list.isEmpty()) {
+            ShoppingCart cart = list.get(0);
+            cart.setNumber(cart.getNumber() + shoppingCart.getNumber());
+            shoppingCartMapper.updateNumberById(cart);
+        }
+        else {
+            //如果不存在，需要插入一条购物车数据
+            //判断本次添加到购物车的是菜品还是套餐
+            Long dishId = shoppingCart.getDishId();
+            if (dishId != null) {
+                Dish dish = productCache.getDish(dishId);
+                shoppingCart.setName(dish.getName());
+                shoppingCart.setImage(dish.getImage());
+                shoppingCart.setAmount(dish.getPrice());
+            }
+            else{
+                Setmeal setmeal = productCache.getSetmeal(shoppingCart.getSetmealId());
+                shoppingCart.setName(setmeal.getName());
+                shoppingCart.setImage(setmeal.getImage());
+                shoppingCart.setAmount(setmeal.getPrice());
+            }
+            shoppingCart.setCreateTime(LocalDateTime.now());
+            shoppingCartMapper.insert(shoppingCart);
+        }
+    }
+
+    @Override
+    public void addAll(List<ShoppingCart> shoppingCartList) {
+        if (!shoppingCartList.isEmpty()) {
+            shoppingCartMapper.insertBatch(shoppingCartList);
+        }
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setUserId(userId);
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    @Override
+    public void clean(Long userId) {
+        shoppingCartMapper.deleteByUserId(userId);
+    }
+}
@@ -0,0 +1,118 @@
+package com.sky.cart;
+
+import com.sky.cache.ProductCache;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.ShoppingCart;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis hash的购物车存储，每个用户一个hash，field为商品，value为数量
+ * 加入购物车只需一次HINCRBY，名称、图片、价格在查询购物车时从商品缓存中补全
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "sky.cart.store", havingValue = "redis")
+public class RedisShoppingCartStore implements ShoppingCartStore {
+
+    private static final String KEY_PREFIX = "CART:";
+    //field格式：dish:菜品id:口味 或 setmeal:套餐id
+    private static final String DISH = "dish";
+    private static final String SETMEAL = "setmeal";
+    private static final String SEPARATOR = ":";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private CartProperties cartProperties;
+    @Autowired
+    private ProductCache productCache;
+
+    @Override
+    public void add(ShoppingCart shoppingCart) {
+        String key = KEY_PREFIX + shoppingCart.getUserId();
+        stringRedisTemplate.opsForHash().increment(key, toField(shoppingCart), shoppingCart.getNumber());
+        stringRedisTemplate.expire(key, cartProperties.getTtlDays(), TimeUnit.DAYS);
+    }
+
+    @Override
+    public void addAll(List<ShoppingCart> shoppingCartList) {
+        shoppingCartList.forEach(this::add);
+    }
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(KEY_PREFIX + userId);
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            int number = Integer.parseInt(entry.getValue().toString());
+            if (number <= 0) {
+                continue;
+            }
+            ShoppingCart shoppingCart = fromField(entry.getKey().toString());
+            ShoppingCart product = getProduct(shoppingCart);
+            if (product == null) {
+                //商品已被删除
+                continue;
+            }
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(number);
+            shoppingCart.setName(product.getName());
+            shoppingCart.setImage(product.getImage());
+            shoppingCart.setAmount(product.getAmount());
+            list.add(shoppingCart);
+        }
+        return list;
+    }
+
+    @Override
+    public void clean(Long userId) {
+        stringRedisTemplate.delete(KEY_PREFIX + userId);
+    }
+
+    private String toField(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            String flavor = shoppingCart.getDishFlavor() == null ? "" : shoppingCart.getDishFlavor();
+            return DISH + SEPARATOR + shoppingCart.getDishId() + SEPARATOR + flavor;
+        }
+        return SETMEAL + SEPARATOR + shoppingCart.getSetmealId();
+    }
+
+    private ShoppingCart fromField(String field) {
+        String[] parts = field.split(SEPARATOR, 3);
+        ShoppingCart shoppingCart = new ShoppingCart();
+        if (DISH.equals(parts[0])) {
+            shoppingCart.setDishId(Long.valueOf(parts[1]));
+            shoppingCart.setDishFlavor(parts.length < 3 || parts[2].isEmpty() ? null : parts[2]);
+        } else {
+            shoppingCart.setSetmealId(Long.valueOf(parts[1]));
+        }
+        return shoppingCart;
+    }
+
+    /**
+     * 查询商品的名称、图片、价格
+     * @param shoppingCart
+     * @return 商品不存在时返回null
+     */
+    private ShoppingCart getProduct(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            Dish dish = productCache.getDish(shoppingCart.getDishId());
+            return dish == null ? null : ShoppingCart.builder()
+                    .name(dish.getName()).image(dish.getImage()).amount(dish.getPrice()).build();
+        }
+        Setmeal setmeal = productCache.getSetmeal(shoppingCart.getSetmealId());
+        return setmeal == null ? null : ShoppingCart.builder()
+                .name(setmeal.getName()).image(setmeal.getImage()).amount(setmeal.getPrice()).build();
+    }
+}
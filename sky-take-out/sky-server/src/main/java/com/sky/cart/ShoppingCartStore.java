@@ -0,0 +1,36 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+
+/**
+ * 购物车存储
+ */
+public interface ShoppingCartStore {
+
+    /**
+     * 加入购物车，已存在相同商品（菜品+口味或套餐）时增加数量
+     * @param shoppingCart 需要userId、dishId或setmealId、dishFlavor、number
+     */
+    void add(ShoppingCart shoppingCart);
+
+    /**
+     * 批量加入购物车
+     * @param shoppingCartList
+     */
+    void addAll(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 查询用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 清空用户的购物车
+     * @param userId
+     */
+    void clean(Long userId);
+}
@@ -0,0 +1,57 @@
+package com.sky.config;
+
+import com.sky.cache.InstrumentedCache;
+import com.sky.cache.JitterRedisCacheWriter;
+import com.sky.properties.RedisCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Spring Cache配置
+ */
+@Configuration
+@Slf4j
+public class CacheConfiguration {
+
+    //清理缓存时SCAN每批返回的数量
+    private static final int SCAN_BATCH_SIZE = 100;
+
+    @Bean
+    public RedisCacheManager cacheManager(RedisConnectionFactory redisConnectionFactory,
+                                          RedisCacheConfiguration redisCacheConfiguration,
+                                          RedisCacheProperties redisCacheProperties) {
+        log.info("开始创建缓存管理器...");
+        //allEntries清理缓存时用SCAN代替KEYS，并统计命中情况
+        RedisCacheWriter cacheWriter = new JitterRedisCacheWriter(
+                RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory, BatchStrategies.scan(SCAN_BATCH_SIZE)),
+                redisCacheProperties.getTtlJitterPercent())
+                .withStatisticsCollector(CacheStatisticsCollector.create());
+
+        RedisCacheConfiguration defaultConfig = redisCacheConfiguration.entryTtl(redisCacheProperties.getDefaultTtl());
+        if (!redisCacheProperties.isCacheNullValues()) {
+            defaultConfig = defaultConfig.disableCachingNullValues();
+        }
+
+        Map<String, RedisCacheConfiguration> initialConfigs = new HashMap<>();
+        RedisCacheConfiguration finalDefaultConfig = defaultConfig;
+        redisCacheProperties.getTtl().forEach((name, ttl) -> initialConfigs.put(name, finalDefaultConfig.entryTtl(ttl)));
+
+        return new RedisCacheManager(cacheWriter, defaultConfig, initialConfigs, true) {
+            @Override
+            protected Cache decorateCache(Cache cache) {
+                return new InstrumentedCache(super.decorateCache(cache));
+            }
+        };
+    }
+}
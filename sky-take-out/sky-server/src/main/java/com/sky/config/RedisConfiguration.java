@@ -1,10 +1,16 @@
 package com.sky.config;
 
+import com.sky.cache.CompactRedisSerializer;
+import com.sky.properties.RedisCacheProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -12,13 +18,44 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfiguration {
 
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisSerializer<Object> redisValueSerializer){
         log.info("开始创建redis模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         //设置redis的连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //设置redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        //设置redis value的序列化器
+        redisTemplate.setValueSerializer(redisValueSerializer);
+        redisTemplate.setHashValueSerializer(redisValueSerializer);
         return redisTemplate;
     }
+
+    /**
+     * 缓存值的序列化器，RedisTemplate和Spring Cache共用
+     */
+    @Bean
+    public RedisSerializer<Object> redisValueSerializer(RedisCacheProperties redisCacheProperties){
+        boolean compress = "gzip-json".equals(redisCacheProperties.getCodec());
+        log.info("redis缓存值编码方式：{}", redisCacheProperties.getCodec());
+        return new CompactRedisSerializer(compress, redisCacheProperties.getCompressThreshold());
+    }
+
+    /**
+     * Spring Cache的redis缓存配置
+     */
+    @Bean
+    public RedisCacheConfiguration redisCacheConfiguration(RedisSerializer<Object> redisValueSerializer){
+        return RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(redisValueSerializer));
+    }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory){
+        log.info("开始创建redis消息监听容器...");
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
 }
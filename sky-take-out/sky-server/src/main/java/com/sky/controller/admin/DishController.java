@@ -1,5 +1,6 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.MenuCache;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -11,9 +12,10 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -30,7 +32,7 @@ public class DishController {
     private DishService dishService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuCache menuCache;
 
     @PostMapping
     @ApiOperation("新增菜品")
@@ -39,8 +41,7 @@ public class DishController {
         dishService.saveWithFlavor(dishDTO);
 
         //精确清理缓存
-        String key = "dish_" + dishDTO.getCategoryId();
-        cleanCache(key);
+        menuCache.invalidate(dishDTO.getCategoryId());
         return Result.success();
     }
 
@@ -56,10 +57,11 @@ public class DishController {
     @ApiOperation("菜品批量删除")
     public Result delete(@RequestParam List<Long> ids) { //@RequestParam将ids根据逗号划分，再存到List集合里
         log.info("菜品批量删除：{}",ids);
+        List<Long> categoryIds = dishService.getCategoryIds(ids);
         dishService.deleteBatch(ids);
 
-        //将所有菜品的缓存数据清理掉，所以以dish_开头的key
-        cleanCache("dish_*");
+        //清理被删除菜品所属分类的缓存
+        menuCache.invalidate(categoryIds);
         return Result.success();
     }
 
@@ -75,10 +77,13 @@ public class DishController {
     @ApiOperation("修改菜品")
     public Result update(@RequestBody DishDTO dishDTO) {
         log.info("修改菜品：{}",dishDTO);
+        List<Long> categoryIds = dishService.getCategoryIds(Collections.singletonList(dishDTO.getId()));
         dishService.updateWithFlavor(dishDTO);
 
-        //将所有菜品的缓存数据清理掉，所以以dish_开头的key
-        cleanCache("dish_*");
+        //修改前后的分类都需要清理缓存
+        Set<Long> affected = new HashSet<>(categoryIds);
+        affected.add(dishDTO.getCategoryId());
+        menuCache.invalidate(affected);
         return Result.success();
     }
 
@@ -95,17 +100,19 @@ public class DishController {
     public Result updateStatus(@PathVariable Integer status, Long id) {
         dishService.startOrStop(status, id);
 
-        //将所有菜品的缓存数据清理掉，所以以dish_开头的key
-        cleanCache("dish_*");
+        //清理菜品所属分类的缓存
+        menuCache.invalidate(dishService.getCategoryIds(Collections.singletonList(id)));
         return Result.success();
     }
 
-    /**
-     * 统一清理缓存数据
-     * @param pattern
-     */
-    private void cleanCache(String pattern){
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
+    @PostMapping("/status/{status}/batch")
+    @ApiOperation("批量起售停售菜品")
+    public Result updateStatusBatch(@PathVariable Integer status, @RequestParam List<Long> ids) {
+        log.info("批量起售停售菜品：{}，{}", status, ids);
+        dishService.startOrStopBatch(status, ids);
+
+        //清理菜品所属分类的缓存
+        menuCache.invalidate(dishService.getCategoryIds(ids));
+        return Result.success();
     }
 }
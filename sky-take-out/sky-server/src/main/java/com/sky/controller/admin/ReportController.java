@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
@@ -65,12 +66,24 @@ public class ReportController {
     }
 
     /**
-     * 导出运营数据报表
+     * 导出运营数据报表，不指定时间时默认导出最近30天的数据
+     * @param begin
+     * @param end
+     * @param withOrders
      * @param response
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response){
-        reportService.exportBusinessData(response);
+    public void export(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+            @RequestParam(defaultValue = "false") Boolean withOrders,
+            HttpServletResponse response){
+        if (begin == null || end == null) {
+            begin = LocalDate.now().minusDays(30);
+            end = LocalDate.now().minusDays(1);
+        }
+        log.info("导出运营数据报表：begin:{},end:{},withOrders:{}", begin, end, withOrders);
+        reportService.exportBusinessData(begin, end, withOrders, response);
     }
 }
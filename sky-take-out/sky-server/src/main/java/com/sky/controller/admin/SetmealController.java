@@ -77,4 +77,12 @@ public class SetmealController {
         setmealService.startOrStop(status, id);
         return Result.success();
     }
+
+    @PostMapping("/status/{status}/batch")
+    @ApiOperation("批量起售停售套餐")
+    @CacheEvict(cacheNames = "setmealCache", allEntries = true) //清理所有缓存
+    public Result updateStatusBatch(@PathVariable Integer status, @RequestParam List<Long> ids) {
+        setmealService.startOrStopBatch(status, ids);
+        return Result.success();
+    }
 }
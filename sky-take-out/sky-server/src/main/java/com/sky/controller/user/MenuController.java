@@ -0,0 +1,58 @@
+package com.sky.controller.user;
+
+import com.sky.cache.MenuSnapshot;
+import com.sky.service.MenuSnapshotService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/user/menu")
+@Slf4j
+@Api(tags = "C端-菜单接口")
+public class MenuController {
+
+    @Autowired
+    private MenuSnapshotService menuSnapshotService;
+
+    /**
+     * 获取完整菜单：分类、菜品及口味、套餐及套餐包含的菜品
+     * 快照已预先序列化，直接写入响应；菜单未变化时（If-None-Match与ETag相同）返回304
+     *
+     * @param request
+     * @param response
+     */
+    @GetMapping("/snapshot")
+    @ApiOperation("获取完整菜单")
+    public void snapshot(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        MenuSnapshot snapshot = menuSnapshotService.getSnapshot();
+        response.setHeader(HttpHeaders.ETAG, snapshot.getEtag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (snapshot.getEtag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] body = snapshot.getJson();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = snapshot.getGzip();
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -1,5 +1,7 @@
 package com.sky.controller.user;
 
+import com.sky.cache.SubmitTokenStore;
+import com.sky.context.BaseContext;
 import com.sky.dto.OrdersPaymentDTO;
 import com.sky.dto.OrdersSubmitDTO;
 import com.sky.entity.OrderDetail;
@@ -28,12 +30,30 @@ public class OrderController {
 
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private SubmitTokenStore submitTokenStore;
 
     @PostMapping("/submit")
     @ApiOperation("用户下单")
-    public Result<OrderSubmitVO> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO) {
+    public Result<OrderSubmitVO> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO,
+                                        @RequestHeader(value = SubmitTokenStore.HEADER, required = false) String token) {
         log.info("用户下单，参数为:{}", ordersSubmitDTO);
-        OrderSubmitVO orderSubmitVO = orderService.submit(ordersSubmitDTO);
+        //在事务外校验令牌，重复请求不占用数据库连接
+        OrderSubmitVO orderSubmitVO = submitTokenStore.submit(BaseContext.getCurrentId(), token,
+                () -> orderService.submit(ordersSubmitDTO));
+        return Result.success(orderSubmitVO);
+    }
+
+    /**
+     * 查询下单结果，异步下单时客户端凭订单号轮询，data为空表示仍在处理中
+     *
+     * @param orderNumber
+     * @return
+     */
+    @GetMapping("/submit/{orderNumber}")
+    @ApiOperation("查询下单结果")
+    public Result<OrderSubmitVO> submitResult(@PathVariable String orderNumber) {
+        OrderSubmitVO orderSubmitVO = orderService.getSubmitResult(orderNumber);
         return Result.success(orderSubmitVO);
     }
 
@@ -30,7 +30,7 @@ public class SetmealController {
      */
     @GetMapping("/list")
     @ApiOperation("根据分类id查询套餐")
-    @Cacheable(cacheNames = "setmealCache", key = "#categoryId") //key: setmealCache::100
+    @Cacheable(cacheNames = "setmealCache", key = "#categoryId", sync = true) //key: setmealCache::100，sync：同一个key并发未命中时只查询一次数据库
     public Result<List<Setmeal>> list(Long categoryId) {
         Setmeal setmeal = new Setmeal();
         setmeal.setCategoryId(categoryId);
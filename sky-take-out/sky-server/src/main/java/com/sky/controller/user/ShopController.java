@@ -1,12 +1,13 @@
 package com.sky.controller.user;
 
 import com.sky.result.Result;
+import com.sky.service.ShopService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @RestController("userShopController")
 @RequestMapping("/user/shop")
@@ -14,16 +15,23 @@ import org.springframework.web.bind.annotation.*;
 @Slf4j
 public class ShopController {
 
-    public static final String KEY = "SHOP_STATUS";
-
     @Autowired
-    private RedisTemplate redisTemplate;
+    private ShopService shopService;
 
     @GetMapping("/status")
     @ApiOperation("查询店铺营业状态")
     public Result<Integer> getStatus(){
-        Integer status = (Integer) redisTemplate.opsForValue().get(KEY);
-        log.info("获取到店铺的营业状态为：{}",status == 1 ? "营业中" : "打烊中");
-        return Result.success(status);
+        return Result.success(shopService.getStatus());
+    }
+
+    /**
+     * 长轮询：营业状态与传入的状态相同时挂起，直到状态变化或超时才返回，客户端收到响应后再次发起
+     * @param status 客户端已知的营业状态
+     * @return
+     */
+    @GetMapping("/status/watch")
+    @ApiOperation("等待店铺营业状态变化")
+    public DeferredResult<Result<Integer>> watchStatus(Integer status){
+        return shopService.watchStatus(status);
     }
 }
@@ -0,0 +1,15 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 菜单变更事件，分类、菜品、套餐修改后发布
+ */
+@Data
+@AllArgsConstructor
+public class MenuChangeEvent {
+
+    //修改菜单的方法
+    private String source;
+}
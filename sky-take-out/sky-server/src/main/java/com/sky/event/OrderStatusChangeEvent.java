@@ -0,0 +1,31 @@
+package com.sky.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单状态变更事件
+ */
+@Data
+@AllArgsConstructor
+public class OrderStatusChangeEvent {
+
+    //变更前的订单状态，新下单时为null
+    private Integer fromStatus;
+
+    //变更后的订单状态
+    private Integer toStatus;
+
+    //本次变更的订单数量
+    private int count;
+
+    //本次变更的订单id，用于向订阅了订单的客户端推送状态变化
+    private List<Long> orderIds;
+
+    public OrderStatusChangeEvent(Integer fromStatus, Integer toStatus, int count) {
+        this(fromStatus, toStatus, count, Collections.emptyList());
+    }
+}
@@ -20,4 +20,7 @@ public interface DishFlavorMapper {
 
     @Select("select * from dish_flavor where dish_id = #{dishId}")
     List<DishFlavor> getByDishId(Long dishId);
+
+    //根据菜品id批量查询口味数据
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
 }
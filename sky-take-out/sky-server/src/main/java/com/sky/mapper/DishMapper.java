@@ -89,4 +89,45 @@ public interface DishMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 查询菜品所属的分类id
+     *
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
+    /**
+     * 根据id批量查询菜品
+     *
+     * @param ids
+     * @return
+     */
+    List<Dish> getByIds(List<Long> ids);
+
+    /**
+     * 统计起售中的菜品数量
+     *
+     * @param ids
+     * @return
+     */
+    Integer countOnSaleByIds(List<Long> ids);
+
+    /**
+     * 统计套餐中停售的菜品数量
+     *
+     * @param setmealIds
+     * @return
+     */
+    Integer countDisabledDishesInSetmeal(List<Long> setmealIds);
+
+    /**
+     * 批量修改菜品状态
+     *
+     * @param dish 修改后的状态及修改人、修改时间
+     * @param ids
+     */
+    @AutoFill(value = OperationType.UPDATE)
+    void updateStatusByIds(Dish dish, List<Long> ids);
 }
@@ -1,13 +1,16 @@
 package com.sky.mapper;
 
 import com.github.pagehelper.Page;
+import com.sky.dto.DateStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
 import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.dto.StatusCountDTO;
 import com.sky.entity.Orders;
+import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.OrderVO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
-import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -30,20 +33,16 @@ public interface OrderMapper {
     Orders getByNumber(String orderNumber);
 
     /**
-     * 修改订单信息
-     * @param orders
+     * 批量插入订单，插入后回填订单id
+     * @param ordersList
      */
-    void update(Orders orders);
+    void insertBatch(List<Orders> ordersList);
 
     /**
-     * 更新订单状态
-     * @param orderStatus
-     * @param orderPaidStatus
-     * @param check_out_time
-     * @param id
+     * 修改订单信息
+     * @param orders
      */
-    @Update("update orders set status = #{orderStatus},pay_status = #{orderPaidStatus} ,checkout_time = #{check_out_time} where id = #{id}")
-    void updateStatus(Integer orderStatus, Integer orderPaidStatus, LocalDateTime check_out_time, Long id);
+    void update(Orders orders);
 
     /**
      * 查询历史订单
@@ -60,22 +59,6 @@ public interface OrderMapper {
     @Select("select * from orders where id = #{id}")
     Orders getById(Long id);
 
-    /**
-     * 根据状态统计订单数量
-     * @param status
-     */
-    @Select("select count(id) from orders where status = #{status}")
-    Integer countStatus(Integer status);
-
-    /**
-     * 根据订单状态和下单时间查询订单
-     * @param status
-     * @param orderTime
-     * @return
-     */
-    @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
-    List<Orders> getByStatusAndOrderTime(Integer status, LocalDateTime orderTime);
-
     /**
      * 根据动态条件统计营业额数据
      * @param map
@@ -97,4 +80,88 @@ public interface OrderMapper {
      * @return
      */
     List<GoodsSalesDTO> getSalesTop10(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 按天分组统计指定区间内的订单总数、有效订单数和营业额
+     * @param begin
+     * @param end
+     * @param status 有效订单的状态
+     * @return
+     */
+    List<DateStatisticsDTO> getStatisticsByDate(LocalDateTime begin, LocalDateTime end, Integer status);
+
+    /**
+     * 流式查询指定区间内的订单，逐条交给handler处理，避免一次性加载到内存
+     * @param begin
+     * @param end
+     * @param handler
+     */
+    void exportByOrderTime(LocalDateTime begin, LocalDateTime end, ResultHandler<Orders> handler);
+
+    /**
+     * 一次查询统计指定区间内的订单总数、有效订单数、营业额和新增用户数
+     * @param begin
+     * @param end
+     * @param status 有效订单的状态
+     * @return
+     */
+    DateStatisticsDTO getBusinessStatistics(LocalDateTime begin, LocalDateTime end, Integer status);
+
+    /**
+     * 一次查询统计指定时间之后各状态的订单数量
+     * @param begin
+     * @return
+     */
+    OrderOverViewVO getOrderOverView(LocalDateTime begin);
+
+    /**
+     * 按状态分组统计指定状态的订单数量
+     * @param statuses
+     * @return
+     */
+    List<StatusCountDTO> countGroupByStatus(List<Integer> statuses);
+
+    /**
+     * 根据订单状态和下单时间查询并锁定一批订单id，需要在事务中调用，锁定的订单在事务结束前不会被其他操作修改
+     * @param status
+     * @param orderTime
+     * @param limit 最多返回的数量
+     * @return
+     */
+    @Select("select id from orders where status = #{status} and order_time < #{orderTime} order by id limit #{limit} for update")
+    List<Long> lockIdsByStatusAndOrderTime(Integer status, LocalDateTime orderTime, Integer limit);
+
+    /**
+     * 从指定订单中查询并锁定仍处于指定状态的订单id，需要在事务中调用
+     * @param ids
+     * @param status
+     * @return
+     */
+    List<Long> lockIdsByIdsAndStatus(List<Long> ids, Integer status);
+
+    /**
+     * 批量修改订单状态，只修改仍处于fromStatus状态的订单
+     * @param ids
+     * @param fromStatus
+     * @param orders 修改后的状态、取消原因、取消时间、送达时间
+     * @return 实际修改的订单数量
+     */
+    Integer updateStatusByIds(List<Long> ids, Integer fromStatus, Orders orders);
+
+    /**
+     * 查询并锁定订单的状态，需要在事务中调用
+     * @param id
+     * @return 订单不存在时返回null
+     */
+    @Select("select status from orders where id = #{id} for update")
+    Integer lockStatusById(Long id);
+
+    /**
+     * 修改单个订单的状态，只有订单当前状态在fromStatuses中时才会修改
+     * @param id
+     * @param fromStatuses 允许的原状态
+     * @param orders 修改后的状态，以及需要同时修改的支付状态、结账时间、取消原因、拒单原因、取消时间、送达时间
+     * @return 实际修改的订单数量，0表示订单不存在或状态已变更
+     */
+    Integer updateStatusByIdAndStatuses(Long id, List<Integer> fromStatuses, Orders orders);
 }
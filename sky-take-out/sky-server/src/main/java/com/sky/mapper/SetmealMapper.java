@@ -93,4 +93,29 @@ public interface SetmealMapper {
      * @return
      */
     Integer countByMap(Map map);
+
+    /**
+     * 根据id批量查询套餐
+     *
+     * @param ids
+     * @return
+     */
+    List<Setmeal> getByIds(List<Long> ids);
+
+    /**
+     * 统计起售中的套餐数量
+     *
+     * @param ids
+     * @return
+     */
+    Integer countOnSaleByIds(List<Long> ids);
+
+    /**
+     * 批量修改套餐状态
+     *
+     * @param setmeal 修改后的状态及修改人、修改时间
+     * @param ids
+     */
+    @AutoFill(value = OperationType.UPDATE)
+    void updateStatusByIds(Setmeal setmeal, List<Long> ids);
 }
@@ -0,0 +1,149 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangeEvent;
+import com.sky.mapper.OrderMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 订单状态机，按OrderTransition中的流转表修改订单状态
+ * 每次流转执行一条 UPDATE ... WHERE id = ? AND status IN (允许的原状态)，根据影响行数判断是否成功，
+ * 多个节点或定时任务同时处理同一订单时只有一方能成功。
+ * 只有一个原状态的流转只需这一条UPDATE；有多个原状态的流转（取消订单）在同一事务中先用SELECT ... FOR UPDATE锁定并读取当前状态，
+ * 用于更新各状态的订单计数和决定是否退款
+ */
+@Component
+@Slf4j
+public class OrderStateMachine {
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final Map<OrderTransition, Metrics> metrics = new EnumMap<>(OrderTransition.class);
+
+    public OrderStateMachine() {
+        for (OrderTransition transition : OrderTransition.values()) {
+            metrics.put(transition, new Metrics());
+        }
+    }
+
+    /**
+     * 执行状态流转
+     * @param id 订单id
+     * @param transition
+     * @param orders 需要同时修改的其他字段，如取消原因、取消时间，状态由流转表决定
+     * @return
+     */
+    public Outcome fire(Long id, OrderTransition transition, Orders orders) {
+        return fire(id, transition, fromStatus -> orders);
+    }
+
+    /**
+     * 执行状态流转，需要同时修改的字段取决于流转前的状态时使用
+     * @param id 订单id
+     * @param transition
+     * @param patch 根据流转前的状态返回需要同时修改的其他字段
+     * @return
+     */
+    public Outcome fire(Long id, OrderTransition transition, Function<Integer, Orders> patch) {
+        long start = System.nanoTime();
+        Outcome outcome = transition.isSingleSource()
+                ? update(id, transition, transition.getFromStatuses().get(0), patch)
+                : transactionTemplate.execute(status -> {
+                    Integer current = orderMapper.lockStatusById(id);
+                    if (current == null || !transition.getFromStatuses().contains(current)) {
+                        return new Outcome(false, current);
+                    }
+                    return update(id, transition, current, patch);
+                });
+
+        metrics.get(transition).record(outcome.isSuccess(), System.nanoTime() - start);
+        if (!outcome.isSuccess()) {
+            log.info("订单{}状态流转{}失败，订单不存在或状态已变更", id, transition);
+            return outcome;
+        }
+        applicationEventPublisher.publishEvent(new OrderStatusChangeEvent(outcome.getStatus(), transition.getToStatus(),
+                1, Collections.singletonList(id)));
+        return outcome;
+    }
+
+    private Outcome update(Long id, OrderTransition transition, Integer fromStatus, Function<Integer, Orders> patch) {
+        Orders orders = patch.apply(fromStatus);
+        orders.setStatus(transition.getToStatus());
+        Integer count = orderMapper.updateStatusByIdAndStatuses(id, transition.getFromStatuses(), orders);
+        if (count == null || count == 0) {
+            //单一原状态的流转没有查询订单，不知道当前状态
+            return new Outcome(false, null);
+        }
+        return new Outcome(true, fromStatus);
+    }
+
+    /**
+     * 各状态流转的次数、失败次数和耗时
+     * @return
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        metrics.forEach((transition, m) -> {
+            long success = m.success.sum();
+            long failed = m.failed.sum();
+            if (success + failed == 0) {
+                return;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("success", success);
+            item.put("failed", failed);
+            item.put("avgMillis", TimeUnit.NANOSECONDS.toMillis(m.nanos.sum() / (success + failed)));
+            item.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(m.maxNanos.get()));
+            result.put(transition.name(), item);
+        });
+        return result;
+    }
+
+    /**
+     * 流转结果
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Outcome {
+        private final boolean success;
+        //成功时为流转前的状态；失败时为查询到的当前状态，订单不存在或未查询时为null
+        private final Integer status;
+    }
+
+    private static class Metrics {
+        private final LongAdder success = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(boolean succeeded, long elapsedNanos) {
+            if (succeeded) {
+                success.increment();
+            } else {
+                failed.increment();
+            }
+            nanos.add(elapsedNanos);
+            maxNanos.accumulate(elapsedNanos);
+        }
+    }
+}
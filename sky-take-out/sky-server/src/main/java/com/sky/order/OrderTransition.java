@@ -0,0 +1,52 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 订单状态流转表：每种操作允许的原状态和流转后的状态
+ */
+public enum OrderTransition {
+
+    //支付：待付款 -> 待接单
+    PAY(Orders.TO_BE_CONFIRMED, Orders.PENDING_PAYMENT),
+    //接单：待接单 -> 已接单
+    CONFIRM(Orders.CONFIRMED, Orders.TO_BE_CONFIRMED),
+    //拒单：待接单 -> 已取消
+    REJECT(Orders.CANCELLED, Orders.TO_BE_CONFIRMED),
+    //派送：已接单 -> 派送中
+    DELIVER(Orders.DELIVERY_IN_PROGRESS, Orders.CONFIRMED),
+    //完成：派送中 -> 已完成
+    COMPLETE(Orders.COMPLETED, Orders.DELIVERY_IN_PROGRESS),
+    //用户取消：待付款、待接单 -> 已取消，待接单的订单需要退款
+    USER_CANCEL(Orders.CANCELLED, Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED),
+    //商家取消：待付款、待接单、已接单、派送中 -> 已取消
+    ADMIN_CANCEL(Orders.CANCELLED, Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS);
+
+    private final Integer toStatus;
+    private final List<Integer> fromStatuses;
+
+    OrderTransition(Integer toStatus, Integer... fromStatuses) {
+        this.toStatus = toStatus;
+        this.fromStatuses = Collections.unmodifiableList(Arrays.asList(fromStatuses));
+    }
+
+    public Integer getToStatus() {
+        return toStatus;
+    }
+
+    public List<Integer> getFromStatuses() {
+        return fromStatuses;
+    }
+
+    /**
+     * 是否只有一个原状态，只有一个原状态时流转前的状态是确定的，不需要先查询
+     * @return
+     */
+    public boolean isSingleSource() {
+        return fromStatuses.size() == 1;
+    }
+}
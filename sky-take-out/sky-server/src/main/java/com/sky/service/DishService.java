@@ -57,10 +57,24 @@ public interface DishService {
      */
     void startOrStop(Integer status, Long id);
 
+    /**
+     * 批量设置起售停售状态
+     * @param status
+     * @param ids
+     */
+    void startOrStopBatch(Integer status, List<Long> ids);
+
     /**
      * 条件查询菜品和口味
      * @param dish
      * @return
      */
     List<DishVO> listWithFlavor(Dish dish);
+
+    /**
+     * 查询菜品所属的分类id
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIds(List<Long> ids);
 }
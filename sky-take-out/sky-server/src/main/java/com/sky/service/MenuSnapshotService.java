@@ -0,0 +1,17 @@
+package com.sky.service;
+
+import com.sky.cache.MenuSnapshot;
+
+public interface MenuSnapshotService {
+
+    /**
+     * 获取当前的菜单快照，菜单修改后第一次获取时重建
+     * @return
+     */
+    MenuSnapshot getSnapshot();
+
+    /**
+     * 使菜单快照失效
+     */
+    void invalidate();
+}
@@ -20,6 +20,14 @@ public interface OrderService {
      */
     OrderSubmitVO submit(OrdersSubmitDTO ordersSubmitDTO);
 
+    /**
+     * 查询下单结果，异步下单仍在排队时返回null
+     *
+     * @param orderNumber
+     * @return
+     */
+    OrderSubmitVO getSubmitResult(String orderNumber);
+
     /**
      * 订单支付
      *
@@ -40,8 +40,11 @@ public interface ReportService {
     SalesTop10ReportVO getSalesTop10(LocalDate begin, LocalDate end);
 
     /**
-     * 导出运营数据报表
+     * 导出指定时间内的运营数据报表
+     * @param begin
+     * @param end
+     * @param withOrders 是否附带订单明细页
      * @param response
      */
-    void exportBusinessData(HttpServletResponse response);
+    void exportBusinessData(LocalDate begin, LocalDate end, boolean withOrders, HttpServletResponse response);
 }
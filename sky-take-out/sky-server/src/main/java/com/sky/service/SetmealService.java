@@ -51,6 +51,13 @@ public interface SetmealService {
      */
     void startOrStop(Integer status, Long id);
 
+    /**
+     * 批量设置起售停售状态
+     * @param status
+     * @param ids
+     */
+    void startOrStopBatch(Integer status, List<Long> ids);
+
     /**
      * 条件查询
      * @param setmeal
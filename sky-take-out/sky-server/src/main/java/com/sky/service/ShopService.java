@@ -0,0 +1,32 @@
+package com.sky.service;
+
+import com.sky.result.Result;
+import org.springframework.web.context.request.async.DeferredResult;
+
+public interface ShopService {
+
+    /**
+     * 设置店铺营业状态
+     * @param status 1 营业中，0 打烊中
+     */
+    void setStatus(Integer status);
+
+    /**
+     * 查询店铺营业状态
+     * @return
+     */
+    Integer getStatus();
+
+    /**
+     * 店铺是否营业中
+     * @return
+     */
+    boolean isOpen();
+
+    /**
+     * 等待营业状态变化，状态与客户端已知的不同时立即返回，否则等到状态变化或超时后返回当前状态
+     * @param knownStatus 客户端已知的营业状态
+     * @return
+     */
+    DeferredResult<Result<Integer>> watchStatus(Integer knownStatus);
+}
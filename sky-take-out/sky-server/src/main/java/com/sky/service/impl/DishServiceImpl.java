@@ -2,6 +2,7 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.annotation.MenuChange;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.DishDTO;
@@ -22,8 +23,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -38,6 +41,7 @@ public class DishServiceImpl implements DishService {
 
     @Override
     @Transactional //事务注解，保持一致性
+    @MenuChange
     public void saveWithFlavor(DishDTO dishDTO) {
         Dish dish = new Dish();
         BeanUtils.copyProperties(dishDTO, dish);
@@ -68,14 +72,12 @@ public class DishServiceImpl implements DishService {
 
     @Override
     @Transactional
+    @MenuChange
     public void deleteBatch(List<Long> ids) {
         //判断当前菜品是否能被删除——是否存在起售中的数据？
-        for (Long id : ids) {
-            Dish dish = dishMapper.getById(id);
-            if(Objects.equals(dish.getStatus(), StatusConstant.ENABLE)) {
-                //当前菜品出于起售中
-                throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
-            }
+        if (dishMapper.countOnSaleByIds(ids) > 0) {
+            //当前菜品出于起售中
+            throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
         }
 
         //判断当前菜品是否能被删除——是否被套餐关联了？
@@ -104,19 +106,13 @@ public class DishServiceImpl implements DishService {
         //根据ID查询菜品数据
         Dish dish = dishMapper.getById(id);
 
-        //根据菜品ID查询口味数据
-        List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
-
-        //将查询到的数据封装到VO
-        DishVO dishVO = new DishVO();
-        BeanUtils.copyProperties(dish, dishVO);
-        dishVO.setFlavors(dishFlavors);
-
-        return dishVO;
+        //查询口味数据并封装到VO
+        return toDishVOList(Collections.singletonList(dish)).get(0);
     }
 
     @Override
     @Transactional
+    @MenuChange
     public void updateWithFlavor(DishDTO dishDTO) {
         //修改菜品基本信息
         Dish dish = new Dish();
@@ -150,10 +146,25 @@ public class DishServiceImpl implements DishService {
     }
 
     @Override
+    @MenuChange
     public void startOrStop(Integer status, Long id) {
-        Dish dish = dishMapper.getById(id);
+        startOrStopBatch(status, Collections.singletonList(id));
+    }
+
+    /**
+     * 批量设置起售停售状态，一条语句修改所有菜品
+     * @param status
+     * @param ids
+     */
+    @Override
+    @MenuChange
+    public void startOrStopBatch(Integer status, List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        Dish dish = new Dish();
         dish.setStatus(status);
-        dishMapper.update(dish);
+        dishMapper.updateStatusByIds(dish, ids);
     }
 
     /**
@@ -164,20 +175,43 @@ public class DishServiceImpl implements DishService {
     @Override
     public List<DishVO> listWithFlavor(Dish dish) {
         List<Dish> dishList = dishMapper.getDishes(dish);
+        return toDishVOList(dishList);
+    }
 
+    /**
+     * 一次查询所有菜品的口味，按菜品id分组后封装到VO
+     * @param dishList
+     * @return
+     */
+    private List<DishVO> toDishVOList(List<Dish> dishList) {
         List<DishVO> dishVOList = new ArrayList<>();
+        if (dishList.isEmpty()) {
+            return dishVOList;
+        }
+
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
 
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
-
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
+            dishVO.setFlavors(flavorMap.getOrDefault(d.getId(), new ArrayList<>()));
             dishVOList.add(dishVO);
         }
-
         return dishVOList;
     }
+
+    /**
+     * 查询菜品所属的分类id
+     * @param ids
+     * @return
+     */
+    @Override
+    public List<Long> getCategoryIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return dishMapper.getCategoryIdsByIds(ids);
+    }
 }
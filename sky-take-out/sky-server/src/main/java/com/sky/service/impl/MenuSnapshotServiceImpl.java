@@ -0,0 +1,178 @@
+package com.sky.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.cache.LocalCache;
+import com.sky.cache.MenuSnapshot;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.event.MenuChangeEvent;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.properties.MenuProperties;
+import com.sky.result.Result;
+import com.sky.service.CategoryService;
+import com.sky.service.DishService;
+import com.sky.service.MenuSnapshotService;
+import com.sky.service.SetmealService;
+import com.sky.vo.DishItemVO;
+import com.sky.vo.DishVO;
+import com.sky.vo.MenuSnapshotVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+@Slf4j
+public class MenuSnapshotServiceImpl implements MenuSnapshotService {
+
+    //菜单版本号，各节点共享
+    private static final String VERSION_KEY = "MENU_SNAPSHOT_VERSION";
+    //分类类型：1 菜品分类，2 套餐分类
+    private static final Integer DISH_CATEGORY = 1;
+    private static final Integer SETMEAL_CATEGORY = 2;
+
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private DishService dishService;
+    @Autowired
+    private SetmealService setmealService;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MenuProperties menuProperties;
+
+    //与接口响应使用相同的序列化配置
+    private final ObjectMapper objectMapper = new JacksonObjectMapper();
+
+    //短时间缓存版本号，其他节点修改菜单后最多在该时间后感知到
+    private LocalCache<String, Long> versionCache;
+
+    private volatile MenuSnapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        versionCache = new LocalCache<>(menuProperties.getVersionTtlMillis(), 1);
+    }
+
+    /**
+     * 获取当前的菜单快照，菜单修改后第一次获取时重建
+     * @return
+     */
+    @Override
+    public MenuSnapshot getSnapshot() {
+        long version = getVersion();
+        MenuSnapshot current = snapshot;
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.getVersion() != version) {
+                current = build(version);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 使菜单快照失效
+     */
+    @Override
+    public void invalidate() {
+        Long version = stringRedisTemplate.opsForValue().increment(VERSION_KEY);
+        versionCache.put(VERSION_KEY, version);
+    }
+
+    /**
+     * 菜单修改的事务提交后再使快照失效，避免重建时读到未提交前的数据
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMenuChange(MenuChangeEvent event) {
+        invalidate();
+    }
+
+    private long getVersion() {
+        return versionCache.get(VERSION_KEY, key -> {
+            String version = stringRedisTemplate.opsForValue().get(key);
+            return version == null ? 0L : Long.parseLong(version);
+        });
+    }
+
+    /**
+     * 查询完整的菜单并序列化、压缩
+     * @param version
+     * @return
+     */
+    private MenuSnapshot build(long version) {
+        long start = System.currentTimeMillis();
+        List<Category> categories = categoryService.list(null);
+        Map<Long, List<DishVO>> dishes = new HashMap<>();
+        Map<Long, List<Setmeal>> setmeals = new HashMap<>();
+        Map<Long, List<DishItemVO>> setmealDishes = new HashMap<>();
+
+        for (Category category : categories) {
+            if (DISH_CATEGORY.equals(category.getType())) {
+                Dish dish = new Dish();
+                dish.setCategoryId(category.getId());
+                dish.setStatus(StatusConstant.ENABLE);
+                dishes.put(category.getId(), dishService.listWithFlavor(dish));
+            } else if (SETMEAL_CATEGORY.equals(category.getType())) {
+                Setmeal setmeal = new Setmeal();
+                setmeal.setCategoryId(category.getId());
+                setmeal.setStatus(StatusConstant.ENABLE);
+                List<Setmeal> list = setmealService.list(setmeal);
+                setmeals.put(category.getId(), list);
+                for (Setmeal s : list) {
+                    setmealDishes.put(s.getId(), setmealService.getDishItemById(s.getId()));
+                }
+            }
+        }
+
+        MenuSnapshotVO menuSnapshotVO = MenuSnapshotVO.builder()
+                .version(version)
+                .categories(categories)
+                .dishes(dishes)
+                .setmeals(setmeals)
+                .setmealDishes(setmealDishes)
+                .build();
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(Result.success(menuSnapshotVO));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("菜单快照序列化失败", e);
+        }
+        //内容相同的快照在各节点上ETag相同
+        String etag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+        byte[] gzip = compress(json);
+        log.info("菜单快照已重建，版本：{}，大小：{}字节，压缩后：{}字节，耗时：{}ms",
+                version, json.length, gzip.length, System.currentTimeMillis() - start);
+        return new MenuSnapshot(version, etag, json, gzip);
+    }
+
+    private byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("菜单快照压缩失败", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,10 +1,13 @@
 package com.sky.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.OrderStatusCounter;
+import com.sky.cache.ProductCache;
+import com.sky.cart.ShoppingCartStore;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.*;
@@ -12,21 +15,29 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderTransition;
+import com.sky.properties.OrderProperties;
 import com.sky.result.PageResult;
 import com.sky.service.OrderService;
+import com.sky.service.ShopService;
 import com.sky.service.UserService;
+import com.sky.task.OrderSubmitPipeline;
+import com.sky.utils.OrderNumberGenerator;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.*;
-import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketRelay;
+import com.sky.websocket.WebSocketTopic;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -42,62 +53,95 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartStore shoppingCartStore;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
     @Autowired
-    private WebSocketServer webSocketServer;
+    private WebSocketRelay webSocketRelay;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderSubmitPipeline orderSubmitPipeline;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private ProductCache productCache;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
+    /**
+     * 用户下单
+     * 不在整个请求上开启事务：校验和算价不占用数据库连接，同步下单只有写库和清空购物车在事务中，
+     * 异步下单请求内不写数据库，购物车在写库线程的同一事务中清空
+     */
     @Override
-    @Transactional
     public OrderSubmitVO submit(OrdersSubmitDTO ordersSubmitDTO) {
 
+        // 店铺打烊时直接拒绝，营业状态保存在内存中，无需查询redis
+        if (!shopService.isOpen()) {
+            throw new OrderBusinessException(MessageConstant.SHOP_CLOSED);
+        }
+
         // 1、处理各种业务异常（地址簿为空，购物车数据为空）
         AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
         if (addressBook == null) {
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
         Long currentId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(currentId);
-        List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> shoppingCartList = shoppingCartStore.list(currentId);
         if (shoppingCartList == null || shoppingCartList.isEmpty()) {
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
 
-        // 2、向订单表插入1条数据
+        // 2、构造订单，订单号在受理时生成，异步下单时客户端凭订单号查询结果
+        // 未填写餐具数量、打包费时按0处理，订单中对应的是int字段，复制null会出错
+        if (ordersSubmitDTO.getTablewareNumber() == null) {
+            ordersSubmitDTO.setTablewareNumber(0);
+        }
+        if (ordersSubmitDTO.getPackAmount() == null) {
+            ordersSubmitDTO.setPackAmount(0);
+        }
         Orders orders = new Orders();
         BeanUtils.copyProperties(ordersSubmitDTO, orders);
         orders.setOrderTime(LocalDateTime.now());
         orders.setPayStatus(Orders.UN_PAID);
         orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));
+        orders.setNumber(orderNumberGenerator.nextNumber());
         orders.setPhone(addressBook.getPhone());
         orders.setConsignee(addressBook.getConsignee());
         orders.setAddress(addressBook.getDetail());
         orders.setUserId(currentId);
 
-        orderMapper.insert(orders);
-
-        Long orderId = orders.getId(); //获取当前订单id
+        // 3、构造订单明细，订单id在写库时回填；按服务端价格计算金额，与客户端金额不一致时在写库前拒绝
         List<OrderDetail> orderDetailList = new ArrayList<>();
-        // 3、向订单明细表插入n条数据
         for (ShoppingCart cart : shoppingCartList) {
             OrderDetail orderDetail = new OrderDetail(); //要放在for循环里面
             BeanUtils.copyProperties(cart, orderDetail);
-            orderDetail.setOrderId(orderId); //设置当前订单明细关联的订单id
             orderDetailList.add(orderDetail);
         }
-        orderDetailMapper.insertBatch(orderDetailList);
-
-        // 4、清空当前用户的购物车数据
-        shoppingCartMapper.deleteByUserId(currentId);
+        priceOrder(orders, orderDetailList);
+        OrderSubmitPipeline.PendingOrder pendingOrder =
+                new OrderSubmitPipeline.PendingOrder(orders, orderDetailList);
+
+        // 4、写库并清空购物车：同步下单在短事务内完成；异步下单放入队列，由后台线程批量写入
+        if (orderSubmitPipeline.isAsync()) {
+            orderSubmitPipeline.enqueue(pendingOrder);
+        } else {
+            transactionTemplate.executeWithoutResult(status ->
+                    orderSubmitPipeline.persist(Collections.singletonList(pendingOrder)));
+        }
 
-        // 5、封装到VO返回结束
+        // 5、封装到VO返回结束，异步下单时订单尚未写库，id为空
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
-                .id(orderId)
+                .id(orders.getId())
                 .orderTime(orders.getOrderTime())
                 .orderNumber(orders.getNumber())
                 .orderAmount(orders.getAmount())
@@ -105,6 +149,77 @@ public class OrderServiceImpl implements OrderService {
         return orderSubmitVO;
     }
 
+    /**
+     * 计算订单金额：按缓存中的菜品、套餐价格重新设置明细单价，加上打包费、配送费和餐具费
+     * 计算过程使用以分为单位的long，BigDecimal只用于与实体之间的转换
+     *
+     * @param orders 客户端提交的订单，amount为客户端计算的金额
+     * @param orderDetailList
+     */
+    private void priceOrder(Orders orders, List<OrderDetail> orderDetailList) {
+        Set<Long> dishIds = new HashSet<>();
+        Set<Long> setmealIds = new HashSet<>();
+        for (OrderDetail orderDetail : orderDetailList) {
+            if (orderDetail.getDishId() != null) {
+                dishIds.add(orderDetail.getDishId());
+            } else {
+                setmealIds.add(orderDetail.getSetmealId());
+            }
+        }
+        Map<Long, Dish> dishMap = productCache.getDishes(dishIds);
+        Map<Long, Setmeal> setmealMap = productCache.getSetmeals(setmealIds);
+
+        long itemCents = 0;
+        int itemCount = 0;
+        for (OrderDetail orderDetail : orderDetailList) {
+            BigDecimal price;
+            if (orderDetail.getDishId() != null) {
+                Dish dish = dishMap.get(orderDetail.getDishId());
+                price = dish == null || !StatusConstant.ENABLE.equals(dish.getStatus()) ? null : dish.getPrice();
+            } else {
+                Setmeal setmeal = setmealMap.get(orderDetail.getSetmealId());
+                price = setmeal == null || !StatusConstant.ENABLE.equals(setmeal.getStatus()) ? null : setmeal.getPrice();
+            }
+            if (price == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_PRODUCT_UNAVAILABLE);
+            }
+            orderDetail.setAmount(price);
+            itemCents += toCents(price) * orderDetail.getNumber();
+            itemCount += orderDetail.getNumber();
+        }
+
+        // 餐具按餐量提供时份数与商品数量相同，选择具体数量但未填写时按0份计算
+        int tablewareNumber = itemCount;
+        if (!Integer.valueOf(1).equals(orders.getTablewareStatus())) {
+            tablewareNumber = Math.max(orders.getTablewareNumber(), 0);
+        }
+        long packCents = itemCount * orderProperties.getPackFeeCents();
+        long totalCents = itemCents + packCents + orderProperties.getDeliveryFeeCents()
+                + tablewareNumber * orderProperties.getTablewareFeeCents();
+
+        if (orders.getAmount() == null || toCents(orders.getAmount()) != totalCents) {
+            log.warn("订单金额不一致，客户端：{}，服务端：{}", orders.getAmount(), BigDecimal.valueOf(totalCents, 2));
+            throw new OrderBusinessException(MessageConstant.ORDER_AMOUNT_ERROR);
+        }
+        orders.setAmount(BigDecimal.valueOf(totalCents, 2));
+        // 打包费配置为整数元，换算不会丢失精度
+        orders.setPackAmount((int) (packCents / 100));
+    }
+
+    private long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    /**
+     * 查询下单结果
+     *
+     * @param orderNumber
+     * @return
+     */
+    public OrderSubmitVO getSubmitResult(String orderNumber) {
+        return orderSubmitPipeline.getResult(BaseContext.getCurrentId(), orderNumber);
+    }
+
     /**
      * 订单支付
      *
@@ -134,20 +249,26 @@ public class OrderServiceImpl implements OrderService {
         jsonObject.put("code", "ORDERPAID");
         OrderPaymentVO vo = jsonObject.toJavaObject(OrderPaymentVO.class);
         vo.setPackageStr(jsonObject.getString("package"));
-        Integer OrderPaidStatus = Orders.PAID;//支付状态，已支付
-        Integer OrderStatus = Orders.TO_BE_CONFIRMED;  //订单状态，待接单
-        LocalDateTime check_out_time = LocalDateTime.now();//更新支付时间
-        orderMapper.updateStatus(OrderStatus, OrderPaidStatus, check_out_time, orders.getId());
+        if (orders == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        // 待付款 -> 待接单，同时更新支付状态和支付时间
+        Orders paid = Orders.builder()
+                .payStatus(Orders.PAID)
+                .checkoutTime(LocalDateTime.now())
+                .build();
+        if (!orderStateMachine.fire(orders.getId(), OrderTransition.PAY, paid).isSuccess()) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
 
 
-        // 通过websocket向客户端浏览器推送消息
+        // 通过websocket向管理端推送消息
         Map map = new HashMap();
         map.put("type",1); // 1表示来单提醒，2表示客户催单
         map.put("orderId",orders.getId());
         map.put("content","订单号"+ ordersPaymentDTO.getOrderNumber());
 
-        String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        webSocketRelay.publish(WebSocketTopic.ADMIN, orders.getId(), map);
         return vo;
 
     }
@@ -162,15 +283,13 @@ public class OrderServiceImpl implements OrderService {
         // 根据订单号查询订单
         Orders ordersDB = orderMapper.getByNumber(outTradeNo);
 
-        // 根据订单id更新订单的状态、支付方式、支付状态、结账时间
+        // 根据订单id更新订单的状态、支付状态、结账时间，重复的支付通知不会再次修改
         Orders orders = Orders.builder()
-                .id(ordersDB.getId())
-                .status(Orders.TO_BE_CONFIRMED)
                 .payStatus(Orders.PAID)
                 .checkoutTime(LocalDateTime.now())
                 .build();
 
-        orderMapper.update(orders);
+        orderStateMachine.fire(ordersDB.getId(), OrderTransition.PAY, orders);
     }
 
     @Override
@@ -184,13 +303,13 @@ public class OrderServiceImpl implements OrderService {
         Page<Orders> ordersList = orderMapper.pageQuery(ordersPageQueryDTO);
         List<OrderVO> list = new ArrayList<>();
 
-        //再根据订单来分别查订单明细，并封装入OrderVO进行响应
+        //再一次性查出当前页所有订单的明细，按订单id分组后封装入OrderVO进行响应
         if (ordersList != null && ordersList.getTotal() > 0) {
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
             for (Orders orders : ordersList) {
                 OrderVO orderVO = new OrderVO();
-                List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId()); //这里是通过订单id查询
                 BeanUtils.copyProperties(orders, orderVO);
-                orderVO.setOrderDetailList(orderDetailList);
+                orderVO.setOrderDetailList(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
                 list.add(orderVO);
             }
         }
@@ -212,27 +331,29 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public void cancelOrder(Long id) {
-        Orders order = orderMapper.getById(id);
-        //订单不存在就返回错误信息
-        if (order == null) {
-            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        // 更新订单状态、取消原因、取消时间，待接单的订单已支付，同时改为退款
+        OrderStateMachine.Outcome outcome = orderStateMachine.fire(id, OrderTransition.USER_CANCEL, fromStatus -> {
+            Orders order = new Orders();
+            order.setCancelReason("用户取消");
+            order.setCancelTime(LocalDateTime.now());
+            if (Orders.TO_BE_CONFIRMED.equals(fromStatus)) {
+                order.setPayStatus(Orders.REFUND);
+            }
+            return order;
+        });
+        if (outcome.isSuccess()) {
+            return;
         }
+
         //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
-        Integer status = order.getStatus();
-        if (status > 4) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        Integer status = outcome.getStatus();
+        if (status == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
         }
         if (status.equals(Orders.CONFIRMED) || status.equals(Orders.DELIVERY_IN_PROGRESS)) {
             throw new OrderBusinessException(MessageConstant.ORDER_PHONE);
         }
-        if (status.equals(Orders.TO_BE_CONFIRMED)) {
-            order.setPayStatus(Orders.REFUND);
-        }
-        // 更新订单状态、取消原因、取消时间
-        order.setStatus(Orders.CANCELLED);
-        order.setCancelReason("用户取消");
-        order.setCancelTime(LocalDateTime.now());
-        orderMapper.update(order);
+        throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
     }
 
     @Override
@@ -252,7 +373,7 @@ public class OrderServiceImpl implements OrderService {
             shoppingCartList.add(shoppingCart);
         }
 
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        shoppingCartStore.addAll(shoppingCartList);
     }
 
     @Override
@@ -270,11 +391,13 @@ public class OrderServiceImpl implements OrderService {
         List<OrderVO> orderVOList = new ArrayList<>();
         List<Orders> ordersList = page.getResult();
         if (!CollectionUtils.isEmpty(ordersList)) {
+            // 批量查询当前页所有订单的明细，避免逐个订单查询
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(ordersList);
             for (Orders orders : ordersList) {
                 // 将共同字段复制到OrderVO
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
-                String orderDishes = getOrderDishesStr(orders);
+                String orderDishes = getOrderDishesStr(orderDetailMap.getOrDefault(orders.getId(), new ArrayList<>()));
 
                 // 将订单菜品信息封装到orderVO中，并添加到orderVOList
                 orderVO.setOrderDishes(orderDishes);
@@ -285,15 +408,27 @@ public class OrderServiceImpl implements OrderService {
     }
 
     /**
-     * 根据订单id获取菜品信息字符串
+     * 批量查询订单明细，并按订单id分组
      *
-     * @param orders
+     * @param ordersList
      * @return
      */
-    private String getOrderDishesStr(Orders orders) {
-        // 查询订单菜品详情信息（订单中的菜品和数量）
-        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        if (orderIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderIds(orderIds);
+        return orderDetailList.stream().collect(Collectors.groupingBy(OrderDetail::getOrderId));
+    }
 
+    /**
+     * 根据订单明细获取菜品信息字符串
+     *
+     * @param orderDetailList
+     * @return
+     */
+    private String getOrderDishesStr(List<OrderDetail> orderDetailList) {
         // 将每一条订单菜品信息拼接为字符串（格式：宫保鸡丁*3；）
         List<String> orderDishList = orderDetailList.stream().map(x -> {
             String orderDish = x.getName() + "*" + x.getNumber() + ";";
@@ -310,10 +445,10 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     public OrderStatisticsVO statistics() {
-        // 根据状态，分别查询出待接单、待派送、派送中的订单数量
-        Integer toBeConfirmed = orderMapper.countStatus(Orders.TO_BE_CONFIRMED);
-        Integer confirmed = orderMapper.countStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.countStatus(Orders.DELIVERY_IN_PROGRESS);
+        // 根据状态，从计数器中取出待接单、待派送、派送中的订单数量
+        Integer toBeConfirmed = orderStatusCounter.get(Orders.TO_BE_CONFIRMED);
+        Integer confirmed = orderStatusCounter.get(Orders.CONFIRMED);
+        Integer deliveryInProgress = orderStatusCounter.get(Orders.DELIVERY_IN_PROGRESS);
 
         // 将查询出的数据封装到orderStatisticsVO中响应
         OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
@@ -329,12 +464,8 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersConfirmDTO
      */
     public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
-        Orders orders = Orders.builder()
-                .id(ordersConfirmDTO.getId())
-                .status(Orders.CONFIRMED)
-                .build();
-
-        orderMapper.update(orders);
+        // 订单只有状态为2（待接单）才可以接单
+        fireOrThrow(ordersConfirmDTO.getId(), OrderTransition.CONFIRM, new Orders());
     }
 
     /**
@@ -343,35 +474,21 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersRejectionDTO
      */
     public void rejection(OrdersRejectionDTO ordersRejectionDTO) throws Exception {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(ordersRejectionDTO.getId());
-
-        // 订单只有存在且状态为2（待接单）才可以拒单
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.TO_BE_CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
-        //支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (Objects.equals(payStatus, Orders.PAID)) {
-            //用户已支付，需要退款
-//            String refund = weChatPayUtil.refund(
-//                    ordersDB.getNumber(),
-//                    ordersDB.getNumber(),
-//                    new BigDecimal(0.01),
-//                    new BigDecimal(0.01));
-            log.info("申请退款");
-        }
-
         // 拒单需要退款，根据订单id更新订单状态、拒单原因、取消时间
+        // 订单只有状态为2（待接单）才可以拒单
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        orders.setStatus(Orders.CANCELLED);
         orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
         orders.setCancelReason(ordersRejectionDTO.getRejectionReason());//这里相当于把取消原因和拒绝原因合并了
         orders.setCancelTime(LocalDateTime.now());
+        fireOrThrow(ordersRejectionDTO.getId(), OrderTransition.REJECT, orders);
 
-        orderMapper.update(orders);
+        //待接单的订单都已支付，需要退款
+//            String refund = weChatPayUtil.refund(
+//                    ordersDB.getNumber(),
+//                    ordersDB.getNumber(),
+//                    new BigDecimal(0.01),
+//                    new BigDecimal(0.01));
+        log.info("申请退款");
     }
 
     /**
@@ -380,15 +497,22 @@ public class OrderServiceImpl implements OrderService {
      * @param ordersCancelDTO
      */
     public void cancel(OrdersCancelDTO ordersCancelDTO) throws Exception {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(ordersCancelDTO.getId());
-
-        //支付状态
-        Integer payStatus = ordersDB.getPayStatus();
-        if (ordersDB.getStatus() == 5){
-            throw new OrderBusinessException(MessageConstant.ORDER_FINISH);
+        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
+        Orders orders = new Orders();
+        orders.setCancelReason(ordersCancelDTO.getCancelReason());
+        orders.setCancelTime(LocalDateTime.now());
+        OrderStateMachine.Outcome outcome = orderStateMachine.fire(ordersCancelDTO.getId(), OrderTransition.ADMIN_CANCEL, orders);
+        if (!outcome.isSuccess()) {
+            if (outcome.getStatus() == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+            }
+            if (Orders.COMPLETED.equals(outcome.getStatus())) {
+                throw new OrderBusinessException(MessageConstant.ORDER_FINISH);
+            }
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
         }
-        if (payStatus == 1) {
+
+        if (!Orders.PENDING_PAYMENT.equals(outcome.getStatus())) {
             //用户已支付，需要退款
 //            String refund = weChatPayUtil.refund(
 //                    ordersDB.getNumber(),
@@ -398,14 +522,6 @@ public class OrderServiceImpl implements OrderService {
 //            log.info("申请退款：{}", refund);
             log.info("申请退款");
         }
-
-        // 管理端取消订单需要退款，根据订单id更新订单状态、取消原因、取消时间
-        Orders orders = new Orders();
-        orders.setId(ordersCancelDTO.getId());
-        orders.setStatus(Orders.CANCELLED);
-        orders.setCancelReason(ordersCancelDTO.getCancelReason());
-        orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
     }
 
     /**
@@ -414,20 +530,8 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void delivery(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为3
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.CONFIRMED)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
-        Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 更新订单状态,状态转为派送中
-        orders.setStatus(Orders.DELIVERY_IN_PROGRESS);
-
-        orderMapper.update(orders);
+        // 订单状态为3时才可以派送，状态转为派送中
+        fireOrThrow(id, OrderTransition.DELIVER, new Orders());
     }
 
     /**
@@ -436,21 +540,10 @@ public class OrderServiceImpl implements OrderService {
      * @param id
      */
     public void complete(Long id) {
-        // 根据id查询订单
-        Orders ordersDB = orderMapper.getById(id);
-
-        // 校验订单是否存在，并且状态为4
-        if (ordersDB == null || !ordersDB.getStatus().equals(Orders.DELIVERY_IN_PROGRESS)) {
-            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
-        }
-
+        // 订单状态为4时才可以完成，状态转为完成，并记录送达时间
         Orders orders = new Orders();
-        orders.setId(ordersDB.getId());
-        // 更新订单状态,状态转为完成
-        orders.setStatus(Orders.COMPLETED);
         orders.setDeliveryTime(LocalDateTime.now());
-
-        orderMapper.update(orders);
+        fireOrThrow(id, OrderTransition.COMPLETE, orders);
     }
 
     @Override
@@ -467,9 +560,21 @@ public class OrderServiceImpl implements OrderService {
         map.put("type",2); // 1表示来单提醒，2表示客户催单
         map.put("orderId",id);
         map.put("content","订单号"+ ordersDB.getNumber());
-        String json = JSON.toJSONString(map);
 
-        // 向浏览器推送消息
-        webSocketServer.sendToAllClient(json);
+        // 向管理端推送消息
+        webSocketRelay.publish(WebSocketTopic.ADMIN, id, map);
+    }
+
+    /**
+     * 执行订单状态流转，订单不存在或状态不允许时抛出异常
+     *
+     * @param id
+     * @param transition
+     * @param orders
+     */
+    private void fireOrThrow(Long id, OrderTransition transition, Orders orders) {
+        if (!orderStateMachine.fire(id, transition, orders).isSuccess()) {
+            throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+        }
     }
 }
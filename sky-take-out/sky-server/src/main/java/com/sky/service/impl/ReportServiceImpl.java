@@ -1,15 +1,20 @@
 package com.sky.service.impl;
 
+import com.sky.dto.DateStatisticsDTO;
 import com.sky.dto.GoodsSalesDTO;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import io.swagger.models.auth.In;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.streaming.SXSSFCell;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -20,13 +25,16 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLEncoder;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -37,36 +45,29 @@ public class ReportServiceImpl implements ReportService {
     private OrderMapper orderMapper;
     @Autowired
     private UserMapper userMapper;
-    @Autowired
-    private WorkspaceService workspaceService;
+
+    //模板中明细数据的起始行，以及明细数据所在的列
+    private static final int DETAIL_START_ROW = 7;
+    private static final int DETAIL_FIRST_CELL = 1;
+    private static final int DETAIL_LAST_CELL = 6;
+    //流式写入Excel时内存中保留的行数
+    private static final int ROW_ACCESS_WINDOW_SIZE = 100;
+    //订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+    private static final String[] ORDER_STATUS_NAMES = {"", "待付款", "待接单", "已接单", "派送中", "已完成", "已取消"};
 
     @Override
     public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
         //当前集合用于存放从begin到end范围内的每天的日期
-        List<LocalDate> dateList = new ArrayList<>();
-
-        dateList.add(begin);
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        while (!begin.equals(end)) {
-            //日期计算，计算指定日期的后一天对应的日期
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        //一次查询出区间内每天的营业额，营业额是指：状态为“已完成”的订单金额合计
+        Map<LocalDate, DateStatisticsDTO> statisticsMap = getOrderStatisticsMap(begin, end);
 
-        //存放每天的营业额
+        //存放每天的营业额，没有订单的日期补0
         List<Double> turnoverList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            //查询date日期对应的营业额数据，营业额是指：状态为“已完成”的订单金额合计
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            // select sum(amount) from orders where order_time > beginTime and order_time < endTime and status = 5
-            Map map = new HashMap();
-            map.put("begin", beginTime);
-            map.put("end", endTime);
-            map.put("status", Orders.COMPLETED);
-            Double turnover = orderMapper.sumByMap(map);
-            turnover = turnover == null ? 0.0 : turnover;
+            DateStatisticsDTO statistics = statisticsMap.get(date);
+            Double turnover = statistics == null || statistics.getTurnover() == null ? 0.0 : statistics.getTurnover();
             turnoverList.add(turnover);
         }
 
@@ -81,15 +82,16 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         //当前集合用于存放从begin到end范围内的每天的日期
-        List<LocalDate> dateList = new ArrayList<>();
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        dateList.add(begin);
+        //一次查询出区间内每天的新增用户数量
+        Map<LocalDate, Integer> newUserMap = getNewUserMap(begin, end);
 
-        while (!begin.equals(end)) {
-            //日期计算，计算指定日期的后一天对应的日期
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        //区间开始之前的用户总数，作为累加的起点
+        Map map = new HashMap();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        Integer totalUser = userMapper.countByMap(map);
+        totalUser = totalUser == null ? 0 : totalUser;
 
         //存放每天的新增用户数据
         List<Integer> newUserList = new ArrayList<>();
@@ -97,17 +99,9 @@ public class ReportServiceImpl implements ReportService {
         List<Integer> totalUserList = new ArrayList<>();
 
         for (LocalDate date : dateList) {
-            //查询date日期对应的用户数量
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Map map = new HashMap();
-            map.put("end", endTime);
-            // 总用户数量
-            Integer totalUser = userMapper.countByMap(map);
-
-            map.put("begin", beginTime);
-            Integer newUser = userMapper.countByMap(map);
+            Integer newUser = newUserMap.getOrDefault(date, 0);
+            //总用户数量 = 前一天的总用户数量 + 当天新增用户数量
+            totalUser += newUser;
 
             totalUserList.add(totalUser);
             newUserList.add(newUser);
@@ -125,14 +119,10 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public OrderReportVO getOrdersStatistics(LocalDate begin, LocalDate end) {
         //当前集合用于存放从begin到end范围内的每天的日期
-        List<LocalDate> dateList = new ArrayList<>();
+        List<LocalDate> dateList = getDateList(begin, end);
 
-        dateList.add(begin);
-
-        while (!begin.equals(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        //一次查询出区间内每天的订单总数和有效订单数
+        Map<LocalDate, DateStatisticsDTO> statisticsMap = getOrderStatisticsMap(begin, end);
 
         //存放每天的订单总数
         List<Integer> orderCountList = new ArrayList<>();
@@ -140,15 +130,9 @@ public class ReportServiceImpl implements ReportService {
         List<Integer> validOrderCountList = new ArrayList<>();
 
         for (LocalDate date : dateList) {
-
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Integer count1 = getOrderCount(beginTime, endTime, null);
-            Integer orderCount = count1 == null ? 0 : count1;
-
-            Integer count2 = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-            Integer validOrderCount = count2 == null ? 0 : count2;
+            DateStatisticsDTO statistics = statisticsMap.get(date);
+            Integer orderCount = statistics == null || statistics.getOrderCount() == null ? 0 : statistics.getOrderCount();
+            Integer validOrderCount = statistics == null || statistics.getValidOrderCount() == null ? 0 : statistics.getValidOrderCount();
 
             orderCountList.add(orderCount);
             validOrderCountList.add(validOrderCount);
@@ -165,7 +149,6 @@ public class ReportServiceImpl implements ReportService {
             //计算订单完成率
             orderCompletionRate = validOrderCount.doubleValue() / totalOrderCount;
         }
-        //计算区间内的有效订单数量
 
         //封装返回结果
         return OrderReportVO.builder()
@@ -178,13 +161,45 @@ public class ReportServiceImpl implements ReportService {
                 .build();
     }
 
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap();
-        map.put("begin", begin);
-        map.put("end", end);
-        map.put("status", status);
+    /**
+     * 获取从begin到end范围内的每天的日期
+     * @param begin
+     * @param end
+     * @return
+     */
+    private List<LocalDate> getDateList(LocalDate begin, LocalDate end) {
+        List<LocalDate> dateList = new ArrayList<>();
+        dateList.add(begin);
+        while (begin.isBefore(end)) {
+            //日期计算，计算指定日期的后一天对应的日期
+            begin = begin.plusDays(1);
+            dateList.add(begin);
+        }
+        return dateList;
+    }
 
-        return orderMapper.countByMap(map);
+    /**
+     * 按天分组查询区间内的订单统计数据，以日期为key
+     * @param begin
+     * @param end
+     * @return
+     */
+    private Map<LocalDate, DateStatisticsDTO> getOrderStatisticsMap(LocalDate begin, LocalDate end) {
+        List<DateStatisticsDTO> list = orderMapper.getStatisticsByDate(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX), Orders.COMPLETED);
+        return list.stream().collect(Collectors.toMap(DateStatisticsDTO::getDate, Function.identity()));
+    }
+
+    /**
+     * 按天分组查询区间内的新增用户数量，以日期为key
+     * @param begin
+     * @param end
+     * @return
+     */
+    private Map<LocalDate, Integer> getNewUserMap(LocalDate begin, LocalDate end) {
+        List<DateStatisticsDTO> list = userMapper.getNewUsersByDate(
+                LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
+        return list.stream().collect(Collectors.toMap(DateStatisticsDTO::getDate, DateStatisticsDTO::getNewUsers));
     }
 
     @Override
@@ -210,65 +225,185 @@ public class ReportServiceImpl implements ReportService {
 
     /**
      * 导出运营数据报表
+     * @param begin
+     * @param end
+     * @param withOrders 是否附带订单明细页
      * @param response
      */
-    public void exportBusinessData(HttpServletResponse response) {
-        //1. 查询数据库，获取营业数据---查询最近30天的运营数据
-        LocalDate dateBegin = LocalDate.now().minusDays(30);
-        LocalDate dateEnd = LocalDate.now().minusDays(1);
-
-        //查询概览数据
-        BusinessDataVO businessDataVO = workspaceService.getBusinessData(LocalDateTime.of(dateBegin, LocalTime.MIN), LocalDateTime.of(dateEnd, LocalTime.MAX));
+    public void exportBusinessData(LocalDate begin, LocalDate end, boolean withOrders, HttpServletResponse response) {
+        //1. 查询数据库，获取营业数据---订单和新增用户各按天分组查询一次
+        List<LocalDate> dateList = getDateList(begin, end);
+        Map<LocalDate, DateStatisticsDTO> statisticsMap = getOrderStatisticsMap(begin, end);
+        Map<LocalDate, Integer> newUserMap = getNewUserMap(begin, end);
+
+        //每天的营业数据，概览数据由明细数据累加得到，无需再查询数据库
+        List<BusinessDataVO> businessDataList = new ArrayList<>();
+        double totalTurnover = 0.0;
+        int totalOrderCount = 0;
+        int totalValidOrderCount = 0;
+        int totalNewUsers = 0;
+        for (LocalDate date : dateList) {
+            DateStatisticsDTO statistics = statisticsMap.get(date);
+            double turnover = statistics == null || statistics.getTurnover() == null ? 0.0 : statistics.getTurnover();
+            int orderCount = statistics == null || statistics.getOrderCount() == null ? 0 : statistics.getOrderCount();
+            int validOrderCount = statistics == null || statistics.getValidOrderCount() == null ? 0 : statistics.getValidOrderCount();
+            int newUsers = newUserMap.getOrDefault(date, 0);
+
+            businessDataList.add(buildBusinessData(turnover, orderCount, validOrderCount, newUsers));
+            totalTurnover += turnover;
+            totalOrderCount += orderCount;
+            totalValidOrderCount += validOrderCount;
+            totalNewUsers += newUsers;
+        }
+        BusinessDataVO businessDataVO = buildBusinessData(totalTurnover, totalOrderCount, totalValidOrderCount, totalNewUsers);
 
         //2. 通过POI将数据写入到Excel文件中
         InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
 
+        SXSSFWorkbook excel = null;
         try {
-            //基于模板文件创建一个新的Excel文件
-            XSSFWorkbook excel = new XSSFWorkbook(in);
-
-            //获取表格文件的Sheet页
-            XSSFSheet sheet = excel.getSheet("Sheet1");
+            //基于模板文件创建一个新的Excel文件，先在模板上填充表头和概览数据
+            XSSFWorkbook template = new XSSFWorkbook(in);
+            XSSFSheet templateSheet = template.getSheet("Sheet1");
 
             //填充数据--时间
-            sheet.getRow(1).getCell(1).setCellValue("时间：" + dateBegin + "至" + dateEnd);
+            templateSheet.getRow(1).getCell(1).setCellValue("时间：" + begin + "至" + end);
 
             //获得第4行
-            XSSFRow row = sheet.getRow(3);
+            XSSFRow row = templateSheet.getRow(3);
             row.getCell(2).setCellValue(businessDataVO.getTurnover());
             row.getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());
             row.getCell(6).setCellValue(businessDataVO.getNewUsers());
 
             //获得第5行
-            row = sheet.getRow(4);
+            row = templateSheet.getRow(4);
             row.getCell(2).setCellValue(businessDataVO.getValidOrderCount());
             row.getCell(4).setCellValue(businessDataVO.getUnitPrice());
 
+            //记录明细行的样式后，删除模板中预留的明细行，明细行改为流式追加，行数不再受模板限制
+            XSSFRow styleRow = templateSheet.getRow(DETAIL_START_ROW);
+            short rowHeight = styleRow.getHeight();
+            CellStyle[] detailStyles = new CellStyle[DETAIL_LAST_CELL + 1];
+            for (int i = DETAIL_FIRST_CELL; i <= DETAIL_LAST_CELL; i++) {
+                detailStyles[i] = styleRow.getCell(i).getCellStyle();
+            }
+            for (int i = templateSheet.getLastRowNum(); i >= DETAIL_START_ROW; i--) {
+                XSSFRow templateRow = templateSheet.getRow(i);
+                if (templateRow != null) {
+                    templateSheet.removeRow(templateRow);
+                }
+            }
+
+            //流式工作簿，只在内存中保留最近的若干行，其余行写入临时文件
+            excel = new SXSSFWorkbook(template, ROW_ACCESS_WINDOW_SIZE);
+            SXSSFSheet sheet = excel.getSheet("Sheet1");
+
             //填充明细数据
-            for (int i = 0; i < 30; i++) {
-                LocalDate date = dateBegin.plusDays(i);
-                //查询某一天的营业数据
-                BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-
-                //获得某一行
-                row = sheet.getRow(7 + i);
-                row.getCell(1).setCellValue(date.toString());
-                row.getCell(2).setCellValue(businessData.getTurnover());
-                row.getCell(3).setCellValue(businessData.getValidOrderCount());
-                row.getCell(4).setCellValue(businessData.getOrderCompletionRate());
-                row.getCell(5).setCellValue(businessData.getUnitPrice());
-                row.getCell(6).setCellValue(businessData.getNewUsers());
+            for (int i = 0; i < dateList.size(); i++) {
+                BusinessDataVO businessData = businessDataList.get(i);
+                SXSSFRow detailRow = sheet.createRow(DETAIL_START_ROW + i);
+                detailRow.setHeight(rowHeight);
+                setCellValue(detailRow, 1, detailStyles, dateList.get(i).toString());
+                setCellValue(detailRow, 2, detailStyles, businessData.getTurnover());
+                setCellValue(detailRow, 3, detailStyles, businessData.getValidOrderCount());
+                setCellValue(detailRow, 4, detailStyles, businessData.getOrderCompletionRate());
+                setCellValue(detailRow, 5, detailStyles, businessData.getUnitPrice());
+                setCellValue(detailRow, 6, detailStyles, businessData.getNewUsers());
+            }
+
+            //填充订单明细页
+            if (withOrders) {
+                writeOrderSheet(excel, LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX));
             }
 
             //3. 通过输出流将Excel文件下载到客户端浏览器
+            String fileName = URLEncoder.encode("运营数据报表" + begin + "至" + end + ".xlsx", "UTF-8");
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "attachment;filename=" + fileName);
             ServletOutputStream out = response.getOutputStream();
             excel.write(out);
-
-            //关闭资源
-            out.close();
-            excel.close();
+            out.flush();
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("导出运营数据报表失败", e);
+        } finally {
+            //关闭资源，并删除流式写入产生的临时文件
+            if (excel != null) {
+                excel.dispose();
+                try {
+                    excel.close();
+                } catch (IOException e) {
+                    log.error("关闭Excel文件失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 流式查询区间内的订单，逐行写入订单明细页
+     * @param excel
+     * @param begin
+     * @param end
+     */
+    private void writeOrderSheet(SXSSFWorkbook excel, LocalDateTime begin, LocalDateTime end) {
+        SXSSFSheet sheet = excel.createSheet("订单明细");
+        String[] titles = {"订单号", "下单时间", "订单状态", "收货人", "手机号", "地址", "实收金额"};
+        SXSSFRow titleRow = sheet.createRow(0);
+        for (int i = 0; i < titles.length; i++) {
+            titleRow.createCell(i).setCellValue(titles[i]);
+        }
+
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        int[] rowNum = {1};
+        orderMapper.exportByOrderTime(begin, end, context -> {
+            Orders orders = context.getResultObject();
+            SXSSFRow row = sheet.createRow(rowNum[0]++);
+            row.createCell(0).setCellValue(orders.getNumber());
+            row.createCell(1).setCellValue(orders.getOrderTime() == null ? "" : formatter.format(orders.getOrderTime()));
+            row.createCell(2).setCellValue(getStatusName(orders.getStatus()));
+            row.createCell(3).setCellValue(orders.getConsignee());
+            row.createCell(4).setCellValue(orders.getPhone());
+            row.createCell(5).setCellValue(orders.getAddress());
+            row.createCell(6).setCellValue(orders.getAmount() == null ? 0.0 : orders.getAmount().doubleValue());
+        });
+    }
+
+    /**
+     * 根据营业额、订单数和新增用户数计算营业数据
+     */
+    private BusinessDataVO buildBusinessData(double turnover, int orderCount, int validOrderCount, int newUsers) {
+        Double unitPrice = 0.0;
+        Double orderCompletionRate = 0.0;
+        if (orderCount != 0 && validOrderCount != 0) {
+            //订单完成率
+            orderCompletionRate = (double) validOrderCount / orderCount;
+            //平均客单价
+            unitPrice = turnover / validOrderCount;
+        }
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
+    }
+
+    private void setCellValue(SXSSFRow row, int column, CellStyle[] styles, String value) {
+        SXSSFCell cell = row.createCell(column);
+        cell.setCellStyle(styles[column]);
+        cell.setCellValue(value);
+    }
+
+    private void setCellValue(SXSSFRow row, int column, CellStyle[] styles, double value) {
+        SXSSFCell cell = row.createCell(column);
+        cell.setCellStyle(styles[column]);
+        cell.setCellValue(value);
+    }
+
+    private String getStatusName(Integer status) {
+        if (status == null || status < 1 || status >= ORDER_STATUS_NAMES.length) {
+            return "";
         }
+        return ORDER_STATUS_NAMES[status];
     }
 }
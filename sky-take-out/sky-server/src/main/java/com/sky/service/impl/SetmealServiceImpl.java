@@ -2,11 +2,11 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.annotation.MenuChange;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
-import com.sky.entity.Dish;
 import com.sky.entity.Setmeal;
 import com.sky.entity.SetmealDish;
 import com.sky.exception.DeletionNotAllowedException;
@@ -22,6 +22,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -36,6 +37,7 @@ public class SetmealServiceImpl implements SetmealService {
     private DishMapper dishMapper;
 
     @Override
+    @MenuChange
     public void insertWithDish(SetmealDTO setmealDTO) {
         Setmeal setmeal = new Setmeal();
         BeanUtils.copyProperties(setmealDTO, setmeal);
@@ -65,12 +67,11 @@ public class SetmealServiceImpl implements SetmealService {
 
     @Override
     @Transactional
+    @MenuChange
     public void deleteBatch(List<Long> ids) {
         //起售中的套餐不能删除
-        for (Long id : ids) {
-            if(Objects.equals(setmealMapper.getById(id).getStatus(), StatusConstant.ENABLE)){
-                throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ON_SALE);
-            }
+        if (setmealMapper.countOnSaleByIds(ids) > 0) {
+            throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ON_SALE);
         }
         //批量删除套餐
         setmealMapper.deleteByIds(ids);
@@ -79,6 +80,7 @@ public class SetmealServiceImpl implements SetmealService {
     }
 
     @Override
+    @MenuChange
     public void updateWithDish(SetmealDTO setmealDTO) {
         //先更新套餐信息
         Setmeal setmeal = new Setmeal();
@@ -115,23 +117,29 @@ public class SetmealServiceImpl implements SetmealService {
     }
 
     @Override
+    @MenuChange
     public void startOrStop(Integer status, Long id) {
+        startOrStopBatch(status, Collections.singletonList(id));
+    }
+
+    /**
+     * 批量设置起售停售状态，一条语句修改所有套餐
+     * @param status
+     * @param ids
+     */
+    @Override
+    @MenuChange
+    public void startOrStopBatch(Integer status, List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
         //起售套餐时，判断套餐内是否有停售菜品，有停售菜品提示"套餐内包含未启售菜品，无法启售
-        if(Objects.equals(status, StatusConstant.ENABLE)){
-            List<Dish> dishes = dishMapper.getBySetmealId(id);
-            if(dishes != null && !dishes.isEmpty()){
-                for (Dish dish : dishes) {
-                    if(Objects.equals(dish.getStatus(), StatusConstant.DISABLE)){
-                        throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ENABLE_FAILED);
-                    }
-                }
-            }
+        if (Objects.equals(status, StatusConstant.ENABLE) && dishMapper.countDisabledDishesInSetmeal(ids) > 0) {
+            throw new DeletionNotAllowedException(MessageConstant.SETMEAL_ENABLE_FAILED);
         }
-        //如果满足条件 更改状态
         Setmeal setmeal = new Setmeal();
-        setmeal.setId(id);
         setmeal.setStatus(status);
-        setmealMapper.update(setmeal);
+        setmealMapper.updateStatusByIds(setmeal, ids);
     }
 
     /**
@@ -0,0 +1,167 @@
+package com.sky.service.impl;
+
+import com.sky.constant.StatusConstant;
+import com.sky.result.Result;
+import com.sky.service.ShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 店铺营业状态保存在进程内，修改时写入redis并通过redis频道通知所有节点
+ * 只有明确设置为打烊时才拒绝下单，redis中没有状态或读取失败时保持上一次的状态
+ */
+@Service
+@Slf4j
+public class ShopServiceImpl implements ShopService, MessageListener {
+
+    public static final String KEY = "SHOP_STATUS";
+    //营业状态变更通知频道，消息内容为新的营业状态
+    private static final String CHANNEL = "SHOP_STATUS_CHANGE";
+    //长轮询的超时时间
+    private static final long WATCH_TIMEOUT_MILLIS = 30000;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    //null表示尚未读取到营业状态，按营业中处理
+    private volatile Integer status;
+
+    //等待营业状态变化的长轮询请求
+    private final Queue<DeferredResult<Result<Integer>>> watchers = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        Integer stored = read();
+        if (stored != null) {
+            //旧版本以JDK序列化写入的状态重新写入一次，转为当前的JSON格式
+            try {
+                redisTemplate.opsForValue().set(KEY, stored);
+            } catch (Exception e) {
+                log.warn("重新写入店铺营业状态失败：{}", e.getMessage());
+            }
+            update(stored);
+        }
+    }
+
+    /**
+     * 设置店铺营业状态
+     * @param status 1 营业中，0 打烊中
+     */
+    @Override
+    public void setStatus(Integer status) {
+        redisTemplate.opsForValue().set(KEY, status);
+        update(status);
+        stringRedisTemplate.convertAndSend(CHANNEL, String.valueOf(status));
+    }
+
+    /**
+     * 查询店铺营业状态
+     * @return
+     */
+    @Override
+    public Integer getStatus() {
+        return isOpen() ? StatusConstant.ENABLE : StatusConstant.DISABLE;
+    }
+
+    /**
+     * 店铺是否营业中
+     * @return
+     */
+    @Override
+    public boolean isOpen() {
+        return !StatusConstant.DISABLE.equals(status);
+    }
+
+    /**
+     * 等待营业状态变化，状态与客户端已知的不同时立即返回，否则等到状态变化或超时后返回当前状态
+     * @param knownStatus 客户端已知的营业状态
+     * @return
+     */
+    @Override
+    public DeferredResult<Result<Integer>> watchStatus(Integer knownStatus) {
+        DeferredResult<Result<Integer>> deferredResult = new DeferredResult<>(WATCH_TIMEOUT_MILLIS);
+        deferredResult.onTimeout(() -> deferredResult.setResult(Result.success(getStatus())));
+        deferredResult.onCompletion(() -> watchers.remove(deferredResult));
+
+        if (!Objects.equals(knownStatus, getStatus())) {
+            deferredResult.setResult(Result.success(getStatus()));
+            return deferredResult;
+        }
+        watchers.add(deferredResult);
+        //加入等待队列前状态可能已经变化
+        if (!Objects.equals(knownStatus, getStatus())) {
+            deferredResult.setResult(Result.success(getStatus()));
+        }
+        return deferredResult;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            update(Integer.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析店铺营业状态变更通知：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期从redis重新读取，防止漏收变更通知；读不到时保持当前状态
+     */
+    @Scheduled(fixedDelay = 30000)
+    public void reload() {
+        Integer stored = read();
+        if (stored != null) {
+            update(stored);
+        }
+    }
+
+    /**
+     * 从redis读取营业状态
+     * @return 没有状态或读取失败时返回null
+     */
+    private Integer read() {
+        try {
+            Object stored = redisTemplate.opsForValue().get(KEY);
+            return stored == null ? null : Integer.valueOf(stored.toString());
+        } catch (Exception e) {
+            log.warn("读取店铺营业状态失败，保持当前状态：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void update(Integer newStatus) {
+        if (Objects.equals(status, newStatus)) {
+            return;
+        }
+        boolean wasOpen = isOpen();
+        status = newStatus;
+        if (wasOpen == isOpen()) {
+            return;
+        }
+        log.info("店铺营业状态变更为：{}", isOpen() ? "营业中" : "打烊中");
+        DeferredResult<Result<Integer>> watcher;
+        while ((watcher = watchers.poll()) != null) {
+            watcher.setResult(Result.success(getStatus()));
+        }
+    }
+}
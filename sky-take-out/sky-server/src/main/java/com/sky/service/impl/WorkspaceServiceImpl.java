@@ -1,11 +1,13 @@
 package com.sky.service.impl;
 
+import com.sky.cache.LocalCache;
 import com.sky.constant.StatusConstant;
+import com.sky.dto.DateStatisticsDTO;
 import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangeEvent;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.UserMapper;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -14,6 +16,9 @@ import com.sky.vo.SetmealOverViewVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.HashMap;
@@ -26,12 +31,16 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
-    private UserMapper userMapper;
-    @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
 
+    //工作台数据缓存时间，所有管理端共享，避免每个打开的工作台刷新时都查询数据库
+    private static final long CACHE_TTL_MILLIS = 3000;
+
+    private final LocalCache<String, BusinessDataVO> businessDataCache = new LocalCache<>(CACHE_TTL_MILLIS, 64);
+    private final LocalCache<LocalDate, OrderOverViewVO> orderOverViewCache = new LocalCache<>(CACHE_TTL_MILLIS, 8);
+
     /**
      * 根据时间段统计营业数据
      * @param begin
@@ -39,6 +48,10 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end) {
+        return businessDataCache.get(begin + "_" + end, key -> queryBusinessData(begin, end));
+    }
+
+    private BusinessDataVO queryBusinessData(LocalDateTime begin, LocalDateTime end) {
         /**
          * 营业额：当日已完成订单的总金额
          * 有效订单：当日已完成订单的数量
@@ -47,20 +60,12 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
-        Map map = new HashMap();
-        map.put("begin",begin);
-        map.put("end",end);
-
-        //查询总订单数
-        Integer totalOrderCount = orderMapper.countByMap(map);
+        //一次查询出总订单数、有效订单数、营业额和新增用户数
+        DateStatisticsDTO statistics = orderMapper.getBusinessStatistics(begin, end, Orders.COMPLETED);
 
-        map.put("status", Orders.COMPLETED);
-        //营业额
-        Double turnover = orderMapper.sumByMap(map);
-        turnover = turnover == null? 0.0 : turnover;
-
-        //有效订单数
-        Integer validOrderCount = orderMapper.countByMap(map);
+        Integer totalOrderCount = statistics.getOrderCount();
+        Integer validOrderCount = statistics.getValidOrderCount();
+        Double turnover = statistics.getTurnover();
 
         Double unitPrice = 0.0;
 
@@ -72,15 +77,12 @@ public class WorkspaceServiceImpl implements WorkspaceService {
             unitPrice = turnover / validOrderCount;
         }
 
-        //新增用户数
-        Integer newUsers = userMapper.countByMap(map);
-
         return BusinessDataVO.builder()
                 .turnover(turnover)
                 .validOrderCount(validOrderCount)
                 .orderCompletionRate(orderCompletionRate)
                 .unitPrice(unitPrice)
-                .newUsers(newUsers)
+                .newUsers(statistics.getNewUsers())
                 .build();
     }
 
@@ -91,36 +93,19 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      * @return
      */
     public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
-
-        //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
-
-        //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
-
-        //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
-
-        //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
-
-        //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
-
-        return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
-                .allOrders(allOrders)
-                .build();
+        //待接单、待派送、已完成、已取消、全部订单一次查询统计
+        return orderOverViewCache.get(LocalDate.now(),
+                today -> orderMapper.getOrderOverView(LocalDateTime.of(today, LocalTime.MIN)));
+    }
+
+    /**
+     * 订单状态变更后清理工作台缓存
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChange(OrderStatusChangeEvent event) {
+        businessDataCache.invalidateAll();
+        orderOverViewCache.invalidateAll();
     }
 
     /**
@@ -0,0 +1,34 @@
+package com.sky.task;
+
+import com.sky.cache.InstrumentedCache;
+import com.sky.cache.ProductCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@Slf4j
+public class CacheTask {
+
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private ProductCache productCache;
+
+    /**
+     * 每分钟输出一次各缓存的命中和加载情况
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logStatistics() {
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof InstrumentedCache) {
+                log.info("缓存{}统计：{}", name, ((InstrumentedCache) cache).getStatistics());
+            }
+        }
+        log.info("商品缓存统计：{}", productCache.getStatistics());
+    }
+}
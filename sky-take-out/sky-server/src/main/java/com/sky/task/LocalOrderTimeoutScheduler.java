@@ -0,0 +1,117 @@
+package com.sky.task;
+
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于进程内时间轮的超时订单调度器
+ * 时间轮每秒走一格，订单按到期时间落到对应的格子里，到期时批量取消
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "sky.order.timeout-scheduler", havingValue = "local", matchIfMissing = true)
+public class LocalOrderTimeoutScheduler implements OrderTimeoutScheduler {
+
+    //格子数量，每格1秒，一圈约17分钟，覆盖支付超时时间，超过一圈的订单会在下一圈到期时处理
+    private static final int WHEEL_SIZE = 1024;
+    private static final long TICK_MILLIS = 1000;
+
+    @SuppressWarnings("unchecked")
+    private final List<Timeout>[] wheel = new List[WHEEL_SIZE];
+    //新登记的订单先放入队列，由时间轮线程转移到格子中，格子只被时间轮线程访问
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "order-timeout-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //时间轮上一次处理到的秒数
+    private long lastTick;
+
+    @Autowired
+    private OrderTask orderTask;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new LinkedList<>();
+        }
+        lastTick = System.currentTimeMillis() / TICK_MILLIS;
+        executor.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void schedule(Long orderId, LocalDateTime orderTime) {
+        long deadline = orderTime.plusMinutes(orderProperties.getPayTimeoutMinutes())
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        pending.add(new Timeout(orderId, deadline));
+    }
+
+    private void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            long currentTick = now / TICK_MILLIS;
+
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null) {
+                wheel[(int) ((timeout.deadline / TICK_MILLIS) % WHEEL_SIZE)].add(timeout);
+            }
+
+            //线程被延迟时，补处理中间错过的格子
+            List<Long> expiredIds = new ArrayList<>();
+            long fromTick = Math.max(lastTick + 1, currentTick - WHEEL_SIZE + 1);
+            for (long t = fromTick; t <= currentTick; t++) {
+                Iterator<Timeout> iterator = wheel[(int) (t % WHEEL_SIZE)].iterator();
+                while (iterator.hasNext()) {
+                    Timeout next = iterator.next();
+                    if (next.deadline <= now) {
+                        expiredIds.add(next.orderId);
+                        iterator.remove();
+                    }
+                }
+            }
+            lastTick = currentTick;
+
+            if (!expiredIds.isEmpty()) {
+                orderTask.cancelTimeoutOrders(expiredIds);
+            }
+        } catch (Exception e) {
+            log.error("处理超时订单失败", e);
+        }
+    }
+
+    private static class Timeout {
+        private final Long orderId;
+        private final long deadline;
+
+        private Timeout(Long orderId, long deadline) {
+            this.orderId = orderId;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.sky.task;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.cart.ShoppingCartStore;
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangeEvent;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderProperties;
+import com.sky.vo.OrderSubmitVO;
+import com.sky.websocket.WebSocketRelay;
+import com.sky.websocket.WebSocketTopic;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下单写库流水线
+ * 同步下单时在请求的事务内直接写库；异步下单时请求只做校验并放入有界队列，
+ * 由后台线程成批取出，用多行insert写入订单和明细，写库结果写入redis并通过websocket推送，客户端可在任意节点按订单号轮询。
+ * 购物车在写库的同一事务中清空，受理后、写库前加入购物车的商品也会被清空。
+ * 注意：队列在进程内，正常停机时会等待队列写完，但进程崩溃或被强制终止时，已受理、尚未写库的订单会丢失，
+ * 丢失范围最多为队列中的订单，即submit-queue-capacity笔，这些订单的购物车不受影响。
+ * 受理时在redis中写入带期限的受理标记，写库线程不再写入超过期限的订单，
+ * 期限过后仍查不到订单时返回下单失败，客户端不会把丢失的订单一直当作处理中
+ */
+@Component
+@Slf4j
+public class OrderSubmitPipeline {
+
+    public static final String MODE_ASYNC = "async";
+
+    //写库结果，key为订单号
+    private static final String RESULT_KEY_PREFIX = "ORDER_SUBMIT_RESULT:";
+    //写库结果保留时间（分钟），客户端应在此时间内完成轮询
+    private static final long RESULT_TTL_MINUTES = 10;
+    //写库事务的超时时间（秒），期限前开始写入的订单最晚在期限过后这么久提交，查询结果时等过这段时间才判定丢失
+    private static final int WRITE_TIMEOUT_SECONDS = 30;
+
+    //推送给用户端的消息类型，3表示下单结果
+    private static final int MESSAGE_TYPE_SUBMIT_RESULT = 3;
+
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+    @Autowired
+    private ShoppingCartStore shoppingCartStore;
+    @Autowired
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    private WebSocketRelay webSocketRelay;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //写库线程使用的事务，带超时时间
+    private TransactionTemplate writeTemplate;
+    private BlockingQueue<PendingOrder> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!isAsync()) {
+            return;
+        }
+        writeTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager(), transactionTemplate);
+        writeTemplate.setTimeout(WRITE_TIMEOUT_SECONDS);
+        queue = new ArrayBlockingQueue<>(orderProperties.getSubmitQueueCapacity());
+        running = true;
+        for (int i = 0; i < orderProperties.getSubmitWorkers(); i++) {
+            Thread worker = new Thread(this::drain, "order-submit-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("异步下单已开启，队列容量：{}，写库线程数：{}", orderProperties.getSubmitQueueCapacity(), workers.size());
+    }
+
+    /**
+     * 停止接收新订单，等待写库线程处理完队列中剩余的订单
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (queue != null && !queue.isEmpty()) {
+            log.warn("停机时仍有{}笔订单未写库", queue.size());
+        }
+    }
+
+    public boolean isAsync() {
+        return MODE_ASYNC.equals(orderProperties.getSubmitMode());
+    }
+
+    /**
+     * 写入订单及明细，清空下单用户的购物车，并登记超时取消，需要在事务中调用
+     * @param pendingOrders
+     */
+    public void persist(List<PendingOrder> pendingOrders) {
+        List<Orders> ordersList = new ArrayList<>(pendingOrders.size());
+        for (PendingOrder pendingOrder : pendingOrders) {
+            ordersList.add(pendingOrder.getOrders());
+        }
+        orderMapper.insertBatch(ordersList);
+
+        List<OrderDetail> orderDetailList = new ArrayList<>();
+        for (PendingOrder pendingOrder : pendingOrders) {
+            Long orderId = pendingOrder.getOrders().getId();
+            for (OrderDetail orderDetail : pendingOrder.getDetails()) {
+                orderDetail.setOrderId(orderId);
+                orderDetailList.add(orderDetail);
+            }
+        }
+        orderDetailMapper.insertBatch(orderDetailList);
+
+        //购物车存储在数据库时与订单一起提交或回滚
+        Set<Long> userIds = new HashSet<>();
+        for (Orders orders : ordersList) {
+            if (userIds.add(orders.getUserId())) {
+                shoppingCartStore.clean(orders.getUserId());
+            }
+        }
+
+        for (Orders orders : ordersList) {
+            orderTimeoutScheduler.schedule(orders.getId(), orders.getOrderTime());
+        }
+        applicationEventPublisher.publishEvent(new OrderStatusChangeEvent(null, Orders.PENDING_PAYMENT, ordersList.size()));
+    }
+
+    /**
+     * 写入受理标记后放入写库队列，队列已满或无法写入受理标记时拒绝下单
+     * @param pendingOrder
+     */
+    public void enqueue(PendingOrder pendingOrder) {
+        if (!running) {
+            throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+        }
+        Orders orders = pendingOrder.getOrders();
+        pendingOrder.setDeadline(System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(orderProperties.getSubmitAcceptTimeoutSeconds()));
+        SubmitResult accepted = new SubmitResult(orders.getUserId(), SubmitResult.ACCEPTED, pendingOrder.getDeadline(), null);
+        try {
+            stringRedisTemplate.opsForValue().set(RESULT_KEY_PREFIX + orders.getNumber(),
+                    JSON.toJSONString(accepted), RESULT_TTL_MINUTES, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            //没有受理标记时订单丢失后客户端无从得知，不受理
+            log.warn("写入受理标记失败，拒绝下单：{}", e.getMessage());
+            throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+        }
+        if (!queue.offer(pendingOrder)) {
+            deleteResult(orders.getNumber());
+            throw new OrderBusinessException(MessageConstant.ORDER_BUSY);
+        }
+    }
+
+    /**
+     * 查询异步下单结果，仍在排队时返回null
+     * 结果保存在redis中，任意节点都能查到；redis中没有结果时回查数据库，
+     * 受理期限过后仍查不到订单时视为订单已丢失，返回下单失败
+     * @param userId
+     * @param orderNumber
+     * @return
+     */
+    public OrderSubmitVO getResult(Long userId, String orderNumber) {
+        SubmitResult result = readResult(orderNumber);
+        if (result != null && !userId.equals(result.getUserId())) {
+            result = null;
+        }
+        if (result != null && result.getState() == SubmitResult.SUCCEEDED) {
+            return result.getOrder();
+        }
+        if (result != null && result.getState() == SubmitResult.FAILED) {
+            throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_FAILED);
+        }
+        Orders orders = orderMapper.getByNumber(orderNumber);
+        if (orders != null && userId.equals(orders.getUserId())) {
+            return toSubmitVO(orders);
+        }
+        if (result != null && System.currentTimeMillis()
+                > result.getDeadline() + TimeUnit.SECONDS.toMillis(WRITE_TIMEOUT_SECONDS)) {
+            log.warn("订单超过受理期限仍未写库，视为丢失，订单号：{}", orderNumber);
+            throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_FAILED);
+        }
+        return null;
+    }
+
+    /**
+     * 写库线程：阻塞取出一笔订单后，再把队列中已有的订单一并取出，凑成一批写入
+     */
+    private void drain() {
+        int batchSize = orderProperties.getSubmitBatchSize();
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingOrder first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("异步下单写库线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 整批写入，失败时逐笔重试，只让有问题的订单失败
+     * 超过受理期限的订单不再写入，期限在事务取得连接后检查，等待连接的时间也计入期限
+     * @param batch
+     */
+    private void flush(List<PendingOrder> batch) {
+        try {
+            List<PendingOrder> written = writeTemplate.execute(status -> {
+                List<PendingOrder> writable = new ArrayList<>(batch.size());
+                for (PendingOrder pendingOrder : batch) {
+                    if (!expired(pendingOrder)) {
+                        writable.add(pendingOrder);
+                    }
+                }
+                if (!writable.isEmpty()) {
+                    persist(writable);
+                }
+                return writable;
+            });
+            for (PendingOrder pendingOrder : batch) {
+                if (written.contains(pendingOrder)) {
+                    succeed(pendingOrder);
+                } else {
+                    fail(pendingOrder);
+                }
+            }
+            return;
+        } catch (Exception e) {
+            log.warn("批量写入{}笔订单失败，逐笔重试：{}", batch.size(), e.getMessage());
+        }
+        for (PendingOrder pendingOrder : batch) {
+            try {
+                pendingOrder.getOrders().setId(null);
+                Boolean written = writeTemplate.execute(status -> {
+                    if (expired(pendingOrder)) {
+                        return false;
+                    }
+                    persist(Collections.singletonList(pendingOrder));
+                    return true;
+                });
+                if (Boolean.TRUE.equals(written)) {
+                    succeed(pendingOrder);
+                } else {
+                    fail(pendingOrder);
+                }
+            } catch (Exception e) {
+                log.error("订单写库失败，订单号：{}", pendingOrder.getOrders().getNumber(), e);
+                fail(pendingOrder);
+            }
+        }
+    }
+
+    private boolean expired(PendingOrder pendingOrder) {
+        if (System.currentTimeMillis() <= pendingOrder.getDeadline()) {
+            return false;
+        }
+        log.warn("订单超过受理期限未写库，不再写入，订单号：{}", pendingOrder.getOrders().getNumber());
+        return true;
+    }
+
+    private void succeed(PendingOrder pendingOrder) {
+        Orders orders = pendingOrder.getOrders();
+        saveResult(orders, true);
+        notifyResult(orders, true);
+    }
+
+    private void fail(PendingOrder pendingOrder) {
+        Orders orders = pendingOrder.getOrders();
+        saveResult(orders, false);
+        notifyResult(orders, false);
+    }
+
+    private void saveResult(Orders orders, boolean success) {
+        SubmitResult result = success
+                ? new SubmitResult(orders.getUserId(), SubmitResult.SUCCEEDED, 0, toSubmitVO(orders))
+                : new SubmitResult(orders.getUserId(), SubmitResult.FAILED, 0, null);
+        try {
+            stringRedisTemplate.opsForValue().set(RESULT_KEY_PREFIX + orders.getNumber(),
+                    JSON.toJSONString(result), RESULT_TTL_MINUTES, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            //写库成功的订单仍可通过数据库查到，失败的订单客户端还会收到websocket推送
+            log.warn("保存下单结果失败，订单号：{}，{}", orders.getNumber(), e.getMessage());
+        }
+    }
+
+    private void deleteResult(String orderNumber) {
+        try {
+            stringRedisTemplate.delete(RESULT_KEY_PREFIX + orderNumber);
+        } catch (Exception e) {
+            log.warn("删除受理标记失败，订单号：{}，{}", orderNumber, e.getMessage());
+        }
+    }
+
+    private SubmitResult readResult(String orderNumber) {
+        try {
+            String value = stringRedisTemplate.opsForValue().get(RESULT_KEY_PREFIX + orderNumber);
+            return value == null ? null : JSON.parseObject(value, SubmitResult.class);
+        } catch (Exception e) {
+            log.warn("读取下单结果失败，订单号：{}，{}", orderNumber, e.getMessage());
+            return null;
+        }
+    }
+
+    private void notifyResult(Orders orders, boolean success) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", MESSAGE_TYPE_SUBMIT_RESULT);
+        map.put("success", success);
+        map.put("orderId", orders.getId());
+        map.put("orderNumber", orders.getNumber());
+        webSocketRelay.publish(WebSocketTopic.submit(orders.getNumber()), null, map);
+    }
+
+    private OrderSubmitVO toSubmitVO(Orders orders) {
+        return OrderSubmitVO.builder()
+                .id(orders.getId())
+                .orderTime(orders.getOrderTime())
+                .orderNumber(orders.getNumber())
+                .orderAmount(orders.getAmount())
+                .build();
+    }
+
+    /**
+     * 异步下单的受理标记或写库结果
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SubmitResult {
+        //已受理，等待写库
+        public static final int ACCEPTED = 0;
+        //写库成功
+        public static final int SUCCEEDED = 1;
+        //写库失败
+        public static final int FAILED = 2;
+
+        private Long userId;
+        private int state;
+        //受理期限，毫秒时间戳，仅受理标记有值
+        private long deadline;
+        //写库成功时的下单结果
+        private OrderSubmitVO order;
+    }
+
+    /**
+     * 已通过校验、等待写库的订单
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class PendingOrder {
+        private final Orders orders;
+        private final List<OrderDetail> details;
+        //受理期限，毫秒时间戳，受理时设置
+        @Setter
+        private long deadline;
+    }
+}
@@ -2,15 +2,22 @@ package com.sky.task;
 
 import com.sky.constant.MessageConstant;
 import com.sky.entity.Orders;
+import com.sky.event.OrderStatusChangeEvent;
 import com.sky.mapper.OrderMapper;
+import com.sky.order.OrderStateMachine;
+import com.sky.properties.OrderProperties;
 import com.sky.service.OrderService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 定时任务类，定时处理订单状态
@@ -22,20 +29,55 @@ public class OrderTask {
 
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+    @Autowired
+    private OrderProperties orderProperties;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
-    @Scheduled(cron = "0 * * * * ? ") //每分钟触发一次
+    /**
+     * 兜底扫描超时未支付的订单，正常情况下超时订单已由OrderTimeoutScheduler按时取消，
+     * 这里只处理服务重启等原因漏掉的订单
+     */
+    @Scheduled(cron = "${sky.order.timeout-sweep-cron:0 */5 * * * ?}")
     public void processTimeOutOrder() {
         log.info("定时处理超时订单：{}", LocalDateTime.now());
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTime(Orders.PENDING_PAYMENT, LocalDateTime.now().minusMinutes(15));
-
-        if (ordersList != null && !ordersList.isEmpty()) {
-            for (Orders order : ordersList) {
-                order.setStatus(Orders.CANCELLED);
-                order.setCancelReason(MessageConstant.ORDER_OVERTIME);
-                order.setCancelTime(LocalDateTime.now());
-                orderMapper.update(order);
-            }
+        LocalDateTime time = LocalDateTime.now().minusMinutes(orderProperties.getPayTimeoutMinutes());
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason(MessageConstant.ORDER_OVERTIME)
+                .cancelTime(LocalDateTime.now())
+                .build();
+        List<Long> cancelledIds = updateStatusInBatches(Orders.PENDING_PAYMENT, time, orders);
+        publishStatusChange(Orders.PENDING_PAYMENT, Orders.CANCELLED, cancelledIds);
+    }
+
+    /**
+     * 批量取消超时未支付的订单，只有仍处于待付款状态的订单会被取消
+     * @param ids
+     */
+    public void cancelTimeoutOrders(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
         }
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason(MessageConstant.ORDER_OVERTIME)
+                .cancelTime(LocalDateTime.now())
+                .build();
+        // 先锁定仍处于待付款状态的订单再修改，得到的就是实际被取消的订单
+        List<Long> cancelledIds = transactionTemplate.execute(status -> {
+            List<Long> lockedIds = orderMapper.lockIdsByIdsAndStatus(ids, Orders.PENDING_PAYMENT);
+            if (!lockedIds.isEmpty()) {
+                orderMapper.updateStatusByIds(lockedIds, Orders.PENDING_PAYMENT, orders);
+            }
+            return lockedIds;
+        });
+        log.info("取消超时订单：{}条，实际取消{}条", ids.size(), cancelledIds.size());
+        publishStatusChange(Orders.PENDING_PAYMENT, Orders.CANCELLED, cancelledIds);
     }
 
     /**
@@ -47,13 +89,74 @@ public class OrderTask {
 
         LocalDateTime time = LocalDateTime.now().plusMinutes(-60);
 
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTime(Orders.DELIVERY_IN_PROGRESS, time);
+        Orders orders = Orders.builder()
+                .status(Orders.COMPLETED)
+                .build();
+        List<Long> completedIds = updateStatusInBatches(Orders.DELIVERY_IN_PROGRESS, time, orders);
+        publishStatusChange(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, completedIds);
+    }
+
+    /**
+     * 每分钟输出一次订单状态流转的次数和耗时
+     */
+    @Scheduled(fixedRate = 60000)
+    public void logTransitionMetrics() {
+        Map<String, Object> metrics = orderStateMachine.getMetrics();
+        if (!metrics.isEmpty()) {
+            log.info("订单状态流转统计：{}", metrics);
+        }
+    }
 
-        if(ordersList != null && !ordersList.isEmpty()){
-            for (Orders orders : ordersList) {
-                orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
+    /**
+     * 分批修改下单时间早于time、状态为fromStatus的订单
+     * 每批在一个事务中先锁定一批订单id再批量修改，锁定的订单不会被其他操作同时修改，返回的id就是实际被修改的订单
+     * @param fromStatus
+     * @param time
+     * @param orders 修改后的状态、取消原因、取消时间
+     * @return 被修改的订单id，用于后续通知
+     */
+    private List<Long> updateStatusInBatches(Integer fromStatus, LocalDateTime time, Orders orders) {
+        int batchSize = orderProperties.getBatchSize();
+        long start = System.currentTimeMillis();
+        List<Long> updatedIds = new ArrayList<>();
+        int batches = 0;
+        int total = 0;
+
+        List<Long> ids;
+        do {
+            ids = transactionTemplate.execute(status -> {
+                List<Long> lockedIds = orderMapper.lockIdsByStatusAndOrderTime(fromStatus, time, batchSize);
+                if (!lockedIds.isEmpty()) {
+                    orderMapper.updateStatusByIds(lockedIds, fromStatus, orders);
+                }
+                return lockedIds;
+            });
+            if (ids.isEmpty()) {
+                break;
             }
+            int count = ids.size();
+            batches++;
+            total += count;
+            updatedIds.addAll(ids);
+            log.info("订单状态{}->{}：第{}批修改{}条，累计{}条，耗时{}ms",
+                    fromStatus, orders.getStatus(), batches, count, total, System.currentTimeMillis() - start);
+        } while (ids.size() == batchSize);
+
+        log.info("订单状态{}->{}处理完成：共{}批{}条，耗时{}ms",
+                fromStatus, orders.getStatus(), batches, total, System.currentTimeMillis() - start);
+        return updatedIds;
+    }
+
+    /**
+     * 发布订单状态变更事件，用于更新状态计数和推送订单状态
+     * @param fromStatus
+     * @param toStatus
+     * @param orderIds
+     */
+    private void publishStatusChange(Integer fromStatus, Integer toStatus, List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
         }
+        applicationEventPublisher.publishEvent(new OrderStatusChangeEvent(fromStatus, toStatus, orderIds.size(), orderIds));
     }
 }
@@ -0,0 +1,16 @@
+package com.sky.task;
+
+import java.time.LocalDateTime;
+
+/**
+ * 超时订单调度器，订单提交时登记，支付超时后自动取消
+ */
+public interface OrderTimeoutScheduler {
+
+    /**
+     * 登记待支付订单
+     * @param orderId
+     * @param orderTime 下单时间
+     */
+    void schedule(Long orderId, LocalDateTime orderTime);
+}
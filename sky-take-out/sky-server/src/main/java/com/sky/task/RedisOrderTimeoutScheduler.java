@@ -0,0 +1,71 @@
+package com.sky.task;
+
+import com.sky.properties.OrderProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于Redis有序集合的超时订单调度器，多节点共享
+ * 以到期时间为score登记订单，各节点轮询到期订单，ZREM成功的节点负责取消，保证同一订单只被处理一次
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "sky.order.timeout-scheduler", havingValue = "redis")
+public class RedisOrderTimeoutScheduler implements OrderTimeoutScheduler {
+
+    public static final String KEY = "ORDER_TIMEOUT";
+
+    //每次取出的到期订单数量
+    private static final int BATCH_SIZE = 100;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderTask orderTask;
+    @Autowired
+    private OrderProperties orderProperties;
+
+    @Override
+    public void schedule(Long orderId, LocalDateTime orderTime) {
+        long deadline = orderTime.plusMinutes(orderProperties.getPayTimeoutMinutes())
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        stringRedisTemplate.opsForZSet().add(KEY, orderId.toString(), deadline);
+    }
+
+    /**
+     * 每秒取出已到期的订单并批量取消
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void poll() {
+        try {
+            Set<String> members;
+            do {
+                members = stringRedisTemplate.opsForZSet()
+                        .rangeByScore(KEY, 0, System.currentTimeMillis(), 0, BATCH_SIZE);
+                if (members == null || members.isEmpty()) {
+                    return;
+                }
+                List<Long> expiredIds = new ArrayList<>();
+                for (String member : members) {
+                    Long removed = stringRedisTemplate.opsForZSet().remove(KEY, member);
+                    if (removed != null && removed > 0) {
+                        expiredIds.add(Long.valueOf(member));
+                    }
+                }
+                orderTask.cancelTimeoutOrders(expiredIds);
+            } while (members.size() == BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("处理超时订单失败", e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端会话，每个会话有独立的待发送队列，同一时间只有一条消息在异步发送。
+ * 开启合并发送的会话，消息先暂存，由定时任务每个周期合并成一个JSON数组帧发送
+ */
+@Slf4j
+public class ClientSession {
+
+    private final String sid;
+    private final Session session;
+    private final int queueCapacity;
+    private final Queue<String> queue;
+    //是否合并发送
+    private final boolean batch;
+    //等待合并的消息
+    private final List<String> pending = new ArrayList<>();
+    //已订阅的主题
+    private final Set<String> topics = ConcurrentHashMap.newKeySet();
+    //是否有消息正在发送，异步发送未完成前不能发送下一条
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+
+    private final LongAdder sendCount = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+
+    public ClientSession(String sid, Session session, int queueCapacity, boolean batch) {
+        this.sid = sid;
+        this.session = session;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batch = batch;
+    }
+
+    /**
+     * 发送消息，合并发送的会话先暂存，否则放入待发送队列
+     * @param message
+     * @return 积压已满时返回false，说明客户端消费过慢
+     */
+    public boolean send(String message) {
+        if (batch) {
+            synchronized (pending) {
+                if (pending.size() >= queueCapacity) {
+                    return false;
+                }
+                pending.add(message);
+                return true;
+            }
+        }
+        return enqueue(message);
+    }
+
+    /**
+     * 把暂存的消息合并成一个JSON数组帧放入待发送队列
+     * @return 积压已满时返回false
+     */
+    public boolean flushBatch() {
+        List<String> messages;
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                return true;
+            }
+            messages = new ArrayList<>(pending);
+            pending.clear();
+        }
+        return enqueue("[" + String.join(",", messages) + "]");
+    }
+
+    private boolean enqueue(String message) {
+        if (!queue.offer(message)) {
+            return false;
+        }
+        flush();
+        return true;
+    }
+
+    /**
+     * 发送队列中的下一条消息，发送完成后在回调中继续发送
+     */
+    private void flush() {
+        if (!session.isOpen() || !sending.compareAndSet(false, true)) {
+            return;
+        }
+        String message = queue.poll();
+        if (message == null) {
+            sending.set(false);
+            //释放发送标记后可能有新消息入队，需要再检查一次
+            if (!queue.isEmpty()) {
+                flush();
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            session.getAsyncRemote().sendText(message, result -> {
+                sendNanos.add(System.nanoTime() - start);
+                sendCount.increment();
+                if (!result.isOK()) {
+                    log.warn("向客户端{}发送消息失败：{}", sid, result.getException().getMessage());
+                }
+                sending.set(false);
+                flush();
+            });
+        } catch (Exception e) {
+            log.warn("向客户端{}发送消息失败：{}", sid, e.getMessage());
+            sending.set(false);
+        }
+    }
+
+    /**
+     * 关闭会话
+     * @param reason
+     */
+    public void close(String reason) {
+        queue.clear();
+        synchronized (pending) {
+            pending.clear();
+        }
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+        } catch (IOException e) {
+            log.warn("关闭客户端{}失败：{}", sid, e.getMessage());
+        }
+    }
+
+    public String getSid() {
+        return sid;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * 待发送的消息数量
+     */
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return queue.size() + pending.size();
+        }
+    }
+
+    public long getSendCount() {
+        return sendCount.sum();
+    }
+
+    public long getSendNanos() {
+        return sendNanos.sum();
+    }
+}
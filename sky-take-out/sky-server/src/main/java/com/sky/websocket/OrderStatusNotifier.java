@@ -0,0 +1,37 @@
+package com.sky.websocket;
+
+import com.sky.event.OrderStatusChangeEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单状态变化推送，订单状态变更后推送到该订单的主题，订阅了订单的客户端可以实时看到状态变化
+ */
+@Component
+public class OrderStatusNotifier {
+
+    //推送给客户端的消息类型，4表示订单状态变化
+    private static final int MESSAGE_TYPE_STATUS_CHANGE = 4;
+
+    @Autowired
+    private WebSocketRelay webSocketRelay;
+
+    /**
+     * 事务提交后逐个订单推送新状态
+     * @param event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrderStatusChange(OrderStatusChangeEvent event) {
+        for (Long orderId : event.getOrderIds()) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("type", MESSAGE_TYPE_STATUS_CHANGE);
+            map.put("orderId", orderId);
+            map.put("status", event.getToStatus());
+            webSocketRelay.publish(WebSocketTopic.order(orderId), orderId, map);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket消息中继
+ * 消息先发布到redis频道，每个节点收到后再推送给本节点的客户端，这样连接在任意节点上的客户端都能收到消息。
+ * 按消息id去重；同一订单的消息带有递增序号，乱序到达时暂存并按序号推送，
+ * 等待缺失的序号超过REORDER_TIMEOUT_MILLIS后不再等待，暂存的消息按序号全部推送，任何消息都不会被丢弃
+ */
+@Component
+@Slf4j
+public class WebSocketRelay implements MessageListener {
+
+    private static final String CHANNEL = "WS_RELAY";
+    private static final String SEQ_KEY_PREFIX = "WS_ORDER_SEQ:";
+    //去重记录的最大数量
+    private static final int MAX_TRACKED = 10000;
+    //等待缺失序号的最长时间
+    private static final long REORDER_TIMEOUT_MILLIS = 500;
+    //序号的保留时间（秒）
+    private static final long SEQ_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    //一次往返完成序号递增、设置过期时间和发布，序号拼接到消息JSON的开头
+    private static final DefaultRedisScript<Long> PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "local seq = redis.call('INCR', KEYS[1]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "redis.call('PUBLISH', ARGV[1], '{\"seq\":' .. seq .. ',' .. string.sub(ARGV[2], 2)) " +
+            "return seq", Long.class);
+
+    //最近收到的消息id
+    private final Map<String, Boolean> deliveredIds = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    //订单id -> 该订单的推送进度
+    private final Map<Long, OrderSequence> sequences = new LinkedHashMap<Long, OrderSequence>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, OrderSequence> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    //等待缺失序号超时后推送暂存的消息
+    private final ScheduledExecutorService reorderTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "websocket-reorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        reorderTimer.shutdownNow();
+    }
+
+    /**
+     * 向所有节点上订阅了指定主题的客户端推送消息
+     *
+     * @param topic
+     * @param orderId 关联的订单id，用于保证同一订单的消息顺序，可以为空
+     * @param message 字符串直接发送，其他对象序列化为JSON
+     */
+    public void publish(String topic, Long orderId, Object message) {
+        String payload = message instanceof String ? (String) message : JSON.toJSONString(message);
+        RelayMessage relayMessage = new RelayMessage();
+        relayMessage.setMsgId(UUID.randomUUID().toString());
+        relayMessage.setTopic(topic);
+        relayMessage.setOrderId(orderId);
+        relayMessage.setPayload(payload);
+        try {
+            if (orderId == null) {
+                stringRedisTemplate.convertAndSend(CHANNEL, JSON.toJSONString(relayMessage));
+            } else {
+                stringRedisTemplate.execute(PUBLISH_SCRIPT, Collections.singletonList(SEQ_KEY_PREFIX + orderId),
+                        CHANNEL, JSON.toJSONString(relayMessage), String.valueOf(SEQ_TTL_SECONDS));
+            }
+        } catch (Exception e) {
+            //redis不可用时至少保证本节点的客户端能收到，没有序号的消息直接推送
+            log.warn("WebSocket消息发布到redis失败，仅推送本节点：{}", e.getMessage());
+            relayMessage.setOrderId(null);
+            deliver(relayMessage);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        RelayMessage relayMessage;
+        try {
+            relayMessage = JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8), RelayMessage.class);
+        } catch (Exception e) {
+            log.warn("无法解析WebSocket中继消息：{}", e.getMessage());
+            return;
+        }
+        deliver(relayMessage);
+    }
+
+    /**
+     * 推送消息：重复的消息不推送；同一订单的消息按序号推送，序号不连续时暂存等待
+     */
+    private synchronized void deliver(RelayMessage relayMessage) {
+        if (deliveredIds.put(relayMessage.getMsgId(), Boolean.TRUE) != null) {
+            return;
+        }
+        if (relayMessage.getOrderId() == null || relayMessage.getSeq() == null) {
+            send(relayMessage);
+            return;
+        }
+
+        Long orderId = relayMessage.getOrderId();
+        long seq = relayMessage.getSeq();
+        OrderSequence sequence = sequences.computeIfAbsent(orderId, key -> new OrderSequence());
+        //第一次收到该订单的消息时，序号为1说明前面没有消息；否则可能有更早的消息还在路上，先暂存等待
+        if (sequence.next == 0 && seq == 1) {
+            sequence.next = 1;
+        }
+        if (sequence.next != 0 && seq < sequence.next) {
+            //超时后才到达的消息，序号已被跳过，直接推送
+            log.info("订单{}的消息晚于等待时间到达，序号：{}", orderId, seq);
+            send(relayMessage);
+            return;
+        }
+
+        sequence.pending.put(seq, relayMessage);
+        drainInOrder(sequence);
+        if (!sequence.pending.isEmpty() && !sequence.waiting) {
+            sequence.waiting = true;
+            reorderTimer.schedule(() -> flush(orderId, sequence), REORDER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 等待超时，不再等待缺失的序号，按序号推送暂存的全部消息
+     */
+    private synchronized void flush(Long orderId, OrderSequence sequence) {
+        sequence.waiting = false;
+        if (sequence.pending.isEmpty()) {
+            return;
+        }
+        log.info("订单{}等待序号{}超时，推送暂存的{}条消息", orderId, sequence.next, sequence.pending.size());
+        for (RelayMessage relayMessage : sequence.pending.values()) {
+            send(relayMessage);
+            sequence.next = relayMessage.getSeq() + 1;
+        }
+        sequence.pending.clear();
+    }
+
+    private void drainInOrder(OrderSequence sequence) {
+        while (sequence.next != 0 && !sequence.pending.isEmpty() && sequence.pending.firstKey() == sequence.next) {
+            send(sequence.pending.pollFirstEntry().getValue());
+            sequence.next++;
+        }
+    }
+
+    private void send(RelayMessage relayMessage) {
+        webSocketServer.sendToTopic(relayMessage.getTopic(), relayMessage.getPayload());
+    }
+
+    /**
+     * 单个订单的推送进度
+     */
+    private static class OrderSequence {
+        //下一个应推送的序号，0表示尚未确定
+        private long next;
+        //序号 -> 暂存的消息
+        private final TreeMap<Long, RelayMessage> pending = new TreeMap<>();
+        //是否已安排超时推送
+        private boolean waiting;
+    }
+
+    @Data
+    public static class RelayMessage {
+        private String msgId;
+        private String topic;
+        private Long orderId;
+        //同一订单内的递增序号
+        private Long seq;
+        //推送给客户端的内容
+        private String payload;
+    }
+}
@@ -1,5 +1,9 @@
 package com.sky.websocket;
 
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Component;
 import javax.websocket.OnClose;
 import javax.websocket.OnMessage;
@@ -7,19 +11,69 @@ import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * WebSocket服务
+ * 连接地址：/ws/{sid}?topics=主题1,主题2&batch=true，未指定topics时订阅管理端主题，
+ * 连接后也可以发送 {"type":"subscribe","topic":"order:1"} 或 unsubscribe 调整订阅
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
+    //每个客户端最多积压的消息数量，超过后视为慢客户端断开连接
+    private static final int SESSION_QUEUE_CAPACITY = 100;
+
+    //合并发送的周期
+    private static final long BATCH_FLUSH_MILLIS = 200;
+
+    //群发队列已满时调用方等待的最长时间
+    private static final long FANOUT_WAIT_MILLIS = 1000;
+
     //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    private static final Map<String, ClientSession> sessionMap = new ConcurrentHashMap<>();
+
+    //主题 -> 订阅该主题的会话
+    private static final Map<String, Set<ClientSession>> topicMap = new ConcurrentHashMap<>();
+
+    //群发线程池，调用方只需把消息交给线程池即可返回，不会被客户端的网络阻塞
+    //发送只是放入各客户端的队列，单线程足够，并保证消息按交给线程池的顺序进入客户端队列。
+    //队列满时调用方等待空位而不是自己发送，自己发送会越过队列中的消息打乱顺序；等待超时的消息丢弃并计数
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000),
+            new NamedThreadFactory("websocket-fanout-"),
+            WebSocketServer::waitForQueue);
+
+    //定时把合并发送会话中暂存的消息发出
+    private static final ScheduledExecutorService batchFlusher =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("websocket-batch-"));
+
+    //因消费过慢被断开的客户端数量
+    private static final LongAdder evictedCount = new LongAdder();
+
+    //群发队列已满、等待超时后丢弃的消息数量
+    private static final LongAdder droppedCount = new LongAdder();
+
+    static {
+        batchFlusher.scheduleWithFixedDelay(WebSocketServer::flushBatches,
+                BATCH_FLUSH_MILLIS, BATCH_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
 
     /**
      * 连接建立成功调用的方法
@@ -27,7 +81,25 @@ public class WebSocketServer {
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
         System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        Map<String, List<String>> params = session.getRequestParameterMap();
+        boolean batch = "true".equals(getParam(params, "batch"));
+        ClientSession clientSession = new ClientSession(sid, session, SESSION_QUEUE_CAPACITY, batch);
+
+        ClientSession old = sessionMap.put(sid, clientSession);
+        if (old != null) {
+            unsubscribeAll(old);
+        }
+
+        String topics = getParam(params, "topics");
+        if (StringUtils.isBlank(topics)) {
+            subscribe(clientSession, WebSocketTopic.ADMIN);
+        } else {
+            for (String topic : topics.split(",")) {
+                if (StringUtils.isNotBlank(topic)) {
+                    subscribe(clientSession, topic.trim());
+                }
+            }
+        }
     }
 
     /**
@@ -38,34 +110,177 @@ public class WebSocketServer {
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
         System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        ClientSession clientSession = sessionMap.get(sid);
+        if (clientSession == null || !message.startsWith("{")) {
+            return;
+        }
+        JSONObject jsonObject;
+        try {
+            jsonObject = JSON.parseObject(message);
+        } catch (Exception e) {
+            return;
+        }
+        String type = jsonObject.getString("type");
+        String topic = jsonObject.getString("topic");
+        if (StringUtils.isBlank(topic)) {
+            return;
+        }
+        if ("subscribe".equals(type)) {
+            subscribe(clientSession, topic);
+        } else if ("unsubscribe".equals(type)) {
+            unsubscribe(clientSession, topic);
+        }
     }
 
     /**
      * 连接关闭调用的方法
      *
+     * @param session
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
+    public void onClose(Session session, @PathParam("sid") String sid) {
         System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+        ClientSession clientSession = sessionMap.get(sid);
+        //同一个sid重连后旧连接才关闭时，不能移除新连接
+        if (clientSession != null && clientSession.getSession() == session) {
+            remove(clientSession);
+        }
     }
 
     /**
-     * 群发
+     * 群发，消息交给线程池异步发送给每个客户端后立即返回
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
-            try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
-            } catch (Exception e) {
-                e.printStackTrace();
+        executor.execute(() -> sessionMap.values().forEach(clientSession -> send(clientSession, message)));
+    }
+
+    /**
+     * 发送给订阅了指定主题的客户端，没有订阅者时不做序列化
+     *
+     * @param topic
+     * @param message 字符串直接发送，其他对象序列化为JSON
+     */
+    public void sendToTopic(String topic, Object message) {
+        Set<ClientSession> subscribers = topicMap.get(topic);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        String text = message instanceof String ? (String) message : JSON.toJSONString(message);
+        executor.execute(() -> subscribers.forEach(clientSession -> send(clientSession, text)));
+    }
+
+    private static void waitForQueue(Runnable task, ThreadPoolExecutor executor) {
+        try {
+            if (executor.getQueue().offer(task, FANOUT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        droppedCount.increment();
+        log.warn("WebSocket群发队列已满，丢弃消息");
+    }
+
+    private static void send(ClientSession clientSession, String message) {
+        if (!clientSession.send(message)) {
+            evict(clientSession);
+        }
+    }
+
+    private static void flushBatches() {
+        for (ClientSession clientSession : sessionMap.values()) {
+            if (clientSession.isBatch() && !clientSession.flushBatch()) {
+                evict(clientSession);
             }
         }
     }
 
+    private static void evict(ClientSession clientSession) {
+        //客户端积压过多，断开连接，由客户端自行重连
+        log.warn("客户端{}消息积压超过{}条，断开连接", clientSession.getSid(), SESSION_QUEUE_CAPACITY);
+        evictedCount.increment();
+        remove(clientSession);
+        clientSession.close("消息积压过多");
+    }
+
+    private static void remove(ClientSession clientSession) {
+        sessionMap.remove(clientSession.getSid(), clientSession);
+        unsubscribeAll(clientSession);
+    }
+
+    private static void subscribe(ClientSession clientSession, String topic) {
+        clientSession.getTopics().add(topic);
+        //在compute中加入，避免加入前集合被并发的unsubscribe当作空集合移除
+        topicMap.compute(topic, (key, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = ConcurrentHashMap.newKeySet();
+            }
+            subscribers.add(clientSession);
+            return subscribers;
+        });
+    }
+
+    private static void unsubscribe(ClientSession clientSession, String topic) {
+        clientSession.getTopics().remove(topic);
+        topicMap.computeIfPresent(topic, (key, subscribers) -> {
+            subscribers.remove(clientSession);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private static void unsubscribeAll(ClientSession clientSession) {
+        for (String topic : clientSession.getTopics()) {
+            unsubscribe(clientSession, topic);
+        }
+    }
+
+    private static String getParam(Map<String, List<String>> params, String name) {
+        List<String> values = params.getOrDefault(name, Collections.emptyList());
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * 获取WebSocket运行指标：连接数、主题数、待发送消息数、已发送消息数、平均发送耗时、断开的慢客户端数、群发丢弃的消息数
+     *
+     * @return
+     */
+    public Map<String, Object> getMetrics() {
+        int queueDepth = 0;
+        long sendCount = 0;
+        long sendNanos = 0;
+        for (ClientSession clientSession : sessionMap.values()) {
+            queueDepth += clientSession.getQueueDepth();
+            sendCount += clientSession.getSendCount();
+            sendNanos += clientSession.getSendNanos();
+        }
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("sessions", sessionMap.size());
+        metrics.put("topics", topicMap.size());
+        metrics.put("queueDepth", queueDepth);
+        metrics.put("sendCount", sendCount);
+        metrics.put("avgSendMillis", sendCount == 0 ? 0.0 : sendNanos / 1_000_000.0 / sendCount);
+        metrics.put("evicted", evictedCount.sum());
+        metrics.put("pendingTasks", executor.getQueue().size());
+        metrics.put("dropped", droppedCount.sum());
+        return metrics;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger index = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,32 @@
+package com.sky.websocket;
+
+/**
+ * WebSocket订阅主题
+ */
+public class WebSocketTopic {
+
+    //管理端，来单提醒、客户催单都推送到该主题
+    public static final String ADMIN = "role:admin";
+
+    private static final String ORDER_PREFIX = "order:";
+
+    private static final String SUBMIT_PREFIX = "submit:";
+
+    /**
+     * 单个订单的主题，用于推送该订单的状态变化
+     * @param orderId
+     * @return
+     */
+    public static String order(Long orderId) {
+        return ORDER_PREFIX + orderId;
+    }
+
+    /**
+     * 异步下单结果的主题，下单时还没有订单id，按订单号订阅
+     * @param orderNumber
+     * @return
+     */
+    public static String submit(String orderNumber) {
+        return SUBMIT_PREFIX + orderNumber;
+    }
+}